@@ -0,0 +1,24 @@
+#!/bin/bash
+# Starts TextSubstituter or TextEditor from the jar made by build_launch.sh, using the class
+# data sharing archive trained for it if there is one.
+#
+#   ./launch.sh TextSubstituter pairs.txt < Green_Eggs_and_Ham.txt
+#   ./launch.sh TextEditor
+
+DIR="$(dirname "$0")"
+JAR="$DIR/build/TextProcessingTutoring.jar"
+MAIN="${1:-TextEditor}"
+shift
+
+if [ ! -f "$JAR" ]; then
+    echo "Run build_launch.sh first." >&2
+    exit 1
+fi
+
+# -Xshare:auto carries on without the archive if it no longer matches the jar
+SHARE=()
+if [ -f "$DIR/build/$MAIN.jsa" ]; then
+    SHARE=(-XX:SharedArchiveFile="$DIR/build/$MAIN.jsa" -Xshare:auto)
+fi
+
+exec java "${SHARE[@]}" $JAVA_OPTS -cp "$JAR" "$MAIN" "$@"
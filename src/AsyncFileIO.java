@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Reads and writes files without blocking the calling thread.
+ *
+ * Everything here is built on AsynchronousFileChannel. Each method starts the work and
+ * returns straight away, the result arrives through a CompletableFuture (or a
+ * Flow.Publisher for a file read in chunks), so one thread can keep hundreds of file
+ * operations going. The calling thread never waits, but on Linux the JDK does the
+ * blocking reads and writes on a thread pool of its own, so the I/O itself still
+ * occupies a thread there.
+ *
+ * Channels are opened and closed for each operation.
+ */
+public class AsyncFileIO {
+    public static final int DEFAULT_CHUNK_SIZE    = 1 << 16;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private AsyncFileIO() {}
+
+    /**
+     * Reads a whole file.
+     *
+     * @param path The file
+     *
+     * @return The contents, ready to be read
+     */
+    public static CompletableFuture<ByteBuffer> read(Path path) {
+        AsynchronousFileChannel channel;
+        int size;
+        try {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE - 8) {
+                channel.close();
+                return CompletableFuture.failedFuture(new IOException("File too large to read at once: " + path));
+            }
+            size = (int) fileSize;
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return closing(channel, readFully(channel, ByteBuffer.allocate(size), 0));
+    }
+
+    /**
+     * Reads part of a file. Stops early if the file ends first.
+     *
+     * @param path The file
+     * @param position Where to start reading
+     * @param length How many bytes to read
+     *
+     * @return What was read, ready to be read
+     */
+    public static CompletableFuture<ByteBuffer> read(Path path, long position, int length) {
+        // Checked before the channel is opened, so there is nothing to close
+        if (position < 0) throw new IllegalArgumentException("Position must not be negative: " + position);
+        if (length < 0) throw new IllegalArgumentException("Length must not be negative: " + length);
+        var dst = ByteBuffer.allocate(length);
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return closing(channel, readFully(channel, dst, position));
+    }
+
+    /**
+     * Writes all of data to a file, replacing what was there.
+     *
+     * @param path The file
+     * @param data What to write, from its position to its limit
+     *
+     * @return How many bytes were written
+     */
+    public static CompletableFuture<Long> write(Path path, ByteBuffer data) {
+        return write(path, 0, data, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes all of data into a file at position, leaving the rest of the file alone.
+     *
+     * @param path The file
+     * @param position Where to start writing
+     * @param data What to write, from its position to its limit
+     *
+     * @return How many bytes were written
+     */
+    public static CompletableFuture<Long> write(Path path, long position, ByteBuffer data) {
+        return write(path, position, data, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private static CompletableFuture<Long> write(Path path, long position, ByteBuffer data, OpenOption... options) {
+        if (position < 0) throw new IllegalArgumentException("Position must not be negative: " + position);
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(path, options);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return closing(channel, writeFully(channel, data, position));
+    }
+
+    /**
+     * Reads many files, with at most maxInFlight being read at once.
+     *
+     * @param paths The files
+     * @param maxInFlight How many reads may be going at the same time
+     *
+     * @return The contents of each file, in the same order as paths
+     */
+    public static CompletableFuture<List<ByteBuffer>> readAll(List<Path> paths, int maxInFlight) {
+        return inBatches(paths, maxInFlight, AsyncFileIO::read);
+    }
+
+    /**
+     * Writes many files, with at most maxInFlight being written at once.
+     *
+     * @param files What to write to each file
+     * @param maxInFlight How many writes may be going at the same time
+     *
+     * @return How many bytes were written to each file, in the iteration order of files
+     */
+    public static CompletableFuture<List<Long>> writeAll(Map<Path, ByteBuffer> files, int maxInFlight) {
+        return inBatches(new ArrayList<>(files.entrySet()), maxInFlight, e -> write(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Reads a file as a stream of chunks, only reading as many as the subscriber asks for.
+     *
+     * Each subscriber gets its own pass over the file, up to the size it had when they
+     * subscribed.
+     *
+     * @param path The file
+     * @param chunkSize The most bytes in each chunk
+     *
+     * @return A publisher of chunks, each ready to be read
+     */
+    public static Flow.Publisher<ByteBuffer> publish(Path path, int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        return subscriber -> {
+            AsynchronousFileChannel channel = null;
+            long size;
+            try {
+                channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+                size = channel.size();
+            } catch (IOException e) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {}
+
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(e);
+                return;
+            }
+            new ChunkSubscription(channel, size, chunkSize, subscriber).start();
+        };
+    }
+
+    private static <T, R> CompletableFuture<List<R>> inBatches(List<T> items, int maxInFlight,
+                                                               Function<T, CompletableFuture<R>> operation) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("Must allow at least one operation in flight.");
+
+        var all = new CompletableFuture<List<R>>();
+        int count = items.size();
+        if (count == 0) {
+            all.complete(List.of());
+            return all;
+        }
+
+        @SuppressWarnings("unchecked")
+        R[] results = (R[]) new Object[count];
+        var next = new AtomicInteger();
+        var done = new AtomicInteger();
+
+        // Each lane starts the next item when its last one finishes
+        var lane = new Runnable() {
+            @Override
+            public void run() {
+                int i = next.getAndIncrement();
+                if (i >= count || all.isDone()) return;
+
+                CompletableFuture<R> f;
+                try {
+                    f = operation.apply(items.get(i));
+                } catch (RuntimeException e) {
+                    f = CompletableFuture.failedFuture(e);
+                }
+                // Async so a run of operations that finish at once can't grow the stack
+                f.whenCompleteAsync((r, e) -> {
+                    if (e != null) {
+                        all.completeExceptionally(e);
+                        return;
+                    }
+                    results[i] = r;
+                    if (done.incrementAndGet() == count) all.complete(Arrays.asList(results));
+                    else run();
+                });
+            }
+        };
+        for (int i = 0; i < Math.min(maxInFlight, count); i++) lane.run();
+        return all;
+    }
+
+    private static <T> CompletableFuture<T> closing(AsynchronousFileChannel channel, CompletableFuture<T> f) {
+        return f.whenComplete((r, e) -> {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do, the operation itself is already finished
+            }
+        });
+    }
+
+    private static CompletableFuture<ByteBuffer> readFully(AsynchronousFileChannel channel, ByteBuffer dst,
+                                                           long position) {
+        var result = new CompletableFuture<ByteBuffer>();
+        channel.read(dst, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer n, Long at) {
+                if (n < 0 || !dst.hasRemaining()) {
+                    result.complete(dst.flip());
+                    return;
+                }
+                try {
+                    channel.read(dst, at + n, at + n, this);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Long at) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static CompletableFuture<Long> writeFully(AsynchronousFileChannel channel, ByteBuffer src,
+                                                      long position) {
+        var result = new CompletableFuture<Long>();
+        long start = position;
+        channel.write(src, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer n, Long at) {
+                if (!src.hasRemaining()) {
+                    result.complete(at + n - start);
+                    return;
+                }
+                try {
+                    channel.write(src, at + n, at + n, this);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable e, Long at) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static class ChunkSubscription implements Flow.Subscription,
+                                                      CompletionHandler<Integer, ByteBuffer> {
+        private final AsynchronousFileChannel             channel;
+        private final long                                size;
+        private final int                                 chunkSize;
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+
+        private final AtomicLong    demand  = new AtomicLong();
+        private final AtomicBoolean reading = new AtomicBoolean();
+        private final AtomicBoolean done    = new AtomicBoolean();
+
+        // Only touched by whoever holds reading
+        private long position = 0;
+
+        ChunkSubscription(AsynchronousFileChannel channel, long size, int chunkSize,
+                          Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.channel = channel;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            subscriber.onSubscribe(this);
+            // Completion doesn't need any demand, so an empty file is done straight away
+            if (size == 0) finish(null);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                finish(new IllegalArgumentException("Must request a positive number of chunks: " + n));
+                return;
+            }
+            demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            readNext();
+        }
+
+        @Override
+        public void cancel() {
+            finish(null, false);
+        }
+
+        @Override
+        public void completed(Integer n, ByteBuffer chunk) {
+            if (n < 0) {
+                finish(null);
+                return;
+            }
+            position += n;
+            demand.decrementAndGet();
+            subscriber.onNext(chunk.flip());
+
+            // Complete as soon as the last chunk is out, the subscriber may not ask for more
+            if (position >= size) {
+                finish(null);
+                return;
+            }
+            reading.set(false);
+            readNext();
+        }
+
+        @Override
+        public void failed(Throwable e, ByteBuffer chunk) {
+            finish(e);
+        }
+
+        // Starts one read if there is demand and no read going already
+        private void readNext() {
+            while (!done.get() && demand.get() > 0 && reading.compareAndSet(false, true)) {
+                // Demand may have been used up between the check and taking reading
+                if (demand.get() > 0 && !done.get()) {
+                    try {
+                        var chunk = ByteBuffer.allocate(chunkSize);
+                        channel.read(chunk, position, chunk, this);
+                    } catch (RuntimeException e) {
+                        finish(e);
+                    }
+                    return;
+                }
+                reading.set(false);
+            }
+        }
+
+        private void finish(Throwable error) {
+            finish(error, true);
+        }
+
+        private void finish(Throwable error, boolean signal) {
+            if (!done.compareAndSet(false, true)) return;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (error == null) error = e;
+            }
+            if (!signal) return;
+            if (error != null) subscriber.onError(error);
+            else subscriber.onComplete();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of char and byte buffers that readers and writers can borrow from.
+ *
+ * Buffers come in a fixed set of size classes, a request is served from the smallest
+ * class that is big enough. Each class is split into stripes picked by thread, so
+ * threads opening and closing streams at the same time rarely wait on each other.
+ * Each stripe only keeps a limited number of buffers, anything beyond that is left
+ * for the garbage collector.
+ *
+ * Requests bigger than the largest size class are always allocated fresh.
+ */
+public class BufferPool {
+    public static final int[] DEFAULT_SIZE_CLASSES  = {1 << 10, 1 << 13, 1 << 16};
+    public static final int   DEFAULT_PER_STRIPE    = 16;
+
+    private final int[] sizeClasses;
+    private final int   stripes;
+
+    private final Bin<CharBuffer>[][] chars;
+    private final Bin<ByteBuffer>[][] heapBytes;
+    private final Bin<ByteBuffer>[][] directBytes;
+
+    private final LongAdder hits     = new LongAdder();
+    private final LongAdder misses   = new LongAdder();
+    private final LongAdder returns  = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    public BufferPool() {
+        this(DEFAULT_SIZE_CLASSES, DEFAULT_PER_STRIPE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param sizeClasses The buffer sizes to keep, in chars or bytes
+     * @param perStripe How many buffers of each class each stripe keeps
+     * @param stripes How many stripes to split each class into
+     */
+    public BufferPool(int[] sizeClasses, int perStripe, int stripes) {
+        if (sizeClasses.length == 0) throw new IllegalArgumentException("No size classes given.");
+        if (perStripe <= 0) throw new IllegalArgumentException("Must keep at least one buffer per stripe.");
+        if (stripes <= 0) throw new IllegalArgumentException("Must have at least one stripe.");
+
+        this.sizeClasses = sizeClasses.clone();
+        Arrays.sort(this.sizeClasses);
+        if (this.sizeClasses[0] <= 0) throw new IllegalArgumentException("Size classes must be positive.");
+        this.stripes = stripes;
+
+        chars = makeBins(this.sizeClasses.length, stripes, perStripe);
+        heapBytes = makeBins(this.sizeClasses.length, stripes, perStripe);
+        directBytes = makeBins(this.sizeClasses.length, stripes, perStripe);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <B extends Buffer> Bin<B>[][] makeBins(int classes, int stripes, int perStripe) {
+        Bin<B>[][] bins = new Bin[classes][stripes];
+        for (var row : bins)
+            for (int i = 0; i < stripes; i++) row[i] = new Bin<>(perStripe);
+        return bins;
+    }
+
+    /**
+     * Borrows a cleared CharBuffer with room for at least minSize chars.
+     */
+    public CharBuffer takeChars(int minSize) {
+        int c = classFor(minSize);
+        CharBuffer b = c < 0 ? null : chars[c][stripe()].take();
+        if (b == null) {
+            misses.increment();
+            return CharBuffer.allocate(c < 0 ? minSize : sizeClasses[c]);
+        }
+        hits.increment();
+        b.clear();
+        return b;
+    }
+
+    /**
+     * Borrows a cleared ByteBuffer with room for at least minSize bytes.
+     */
+    public ByteBuffer takeBytes(int minSize, boolean direct) {
+        int c = classFor(minSize);
+        ByteBuffer b = c < 0 ? null : (direct ? directBytes : heapBytes)[c][stripe()].take();
+        if (b == null) {
+            misses.increment();
+            int size = c < 0 ? minSize : sizeClasses[c];
+            return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+        hits.increment();
+        b.clear();
+        return b;
+    }
+
+    /**
+     * Hands a buffer back, it must not be used again by the caller.
+     */
+    public void give(CharBuffer b) {
+        int c = classOf(b);
+        if (c >= 0 && chars[c][stripe()].give(b)) returns.increment();
+        else discards.increment();
+    }
+
+    /**
+     * Hands a buffer back, it must not be used again by the caller.
+     */
+    public void give(ByteBuffer b) {
+        int c = classOf(b);
+        if (c >= 0 && (b.isDirect() ? directBytes : heapBytes)[c][stripe()].give(b)) returns.increment();
+        else discards.increment();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getReturns() {
+        return returns.sum();
+    }
+
+    public long getDiscards() {
+        return discards.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{sizes=" + Arrays.toString(sizeClasses) + ", stripes=" + stripes
+               + ", hits=" + getHits() + ", misses=" + getMisses()
+               + ", returns=" + getReturns() + ", discards=" + getDiscards() + "}";
+    }
+
+    private int classFor(int minSize) {
+        for (int i = 0; i < sizeClasses.length; i++)
+            if (sizeClasses[i] >= minSize) return i;
+        return -1;
+    }
+
+    // Only buffers we could have handed out go back in, slices and views are dropped
+    private int classOf(Buffer b) {
+        if (b.isReadOnly() || b.hasArray() && b.arrayOffset() != 0) return -1;
+        int i = Arrays.binarySearch(sizeClasses, b.capacity());
+        return i >= 0 ? i : -1;
+    }
+
+    private int stripe() {
+        return (int) (Thread.currentThread().getId() % stripes);
+    }
+
+    private static class Bin<B> {
+        private final ArrayDeque<B> buffers;
+        private final int           limit;
+
+        Bin(int limit) {
+            this.buffers = new ArrayDeque<>(limit);
+            this.limit = limit;
+        }
+
+        synchronized B take() {
+            return buffers.pollLast();
+        }
+
+        synchronized boolean give(B b) {
+            if (buffers.size() >= limit) return false;
+            buffers.addLast(b);
+            return true;
+        }
+    }
+}
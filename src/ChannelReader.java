@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Objects;
+
+/**
+ * A Reader that reads bytes straight from a channel and decodes them itself.
+ *
+ * Unlike a BufferedReader over a FileReader, the size of the byte buffer, whether it
+ * is a direct buffer and the charset used to decode it are all up to the caller.
+ * Bytes that can't be decoded are replaced, the same as InputStreamReader does.
+ */
+public class ChannelReader extends Reader {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    protected final ReadableByteChannel channel;
+    protected final CharsetDecoder      decoder;
+    protected final CharBuffer          chars;
+    protected final BufferPool          pool;
+
+    // Kept ready for reading (flipped)
+    protected ByteBuffer bytes;
+
+    private boolean endOfInput = false;
+    private boolean finished   = false;
+    private boolean closed     = false;
+
+    public ChannelReader(ReadableByteChannel channel, Charset charset) {
+        this(channel, charset, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    public ChannelReader(ReadableByteChannel channel, Charset charset, int bufferSize, boolean direct) {
+        this(channel, charset, (direct ? ByteBuffer.allocateDirect(checkSize(bufferSize))
+                                       : ByteBuffer.allocate(checkSize(bufferSize))).flip(),
+             CharBuffer.allocate(bufferSize), null);
+    }
+
+    /**
+     * Borrows its buffers from pool and gives them back when closed.
+     */
+    public ChannelReader(ReadableByteChannel channel, Charset charset, int bufferSize, boolean direct,
+                         BufferPool pool) {
+        this(channel, charset, pool.takeBytes(checkSize(bufferSize), direct).flip(),
+             pool.takeChars(bufferSize), pool);
+    }
+
+    /**
+     * @param bytes Ready for reading, normally empty
+     * @param chars Any state, it is cleared
+     * @param pool Where to give both buffers back to on close, or null
+     */
+    protected ChannelReader(ReadableByteChannel channel, Charset charset, ByteBuffer bytes, CharBuffer chars,
+                            BufferPool pool) {
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = bytes;
+        this.chars = chars.clear().flip();
+        this.pool = pool;
+    }
+
+    protected static int checkSize(int size) {
+        if (size < 16) throw new IllegalArgumentException("Buffer size too small: " + size);
+        return size;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+        if (!chars.hasRemaining() && !decode()) return -1;
+        return chars.get();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        ensureOpen();
+        if (len == 0) return 0;
+        if (!chars.hasRemaining() && !decode()) return -1;
+
+        int n = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, n);
+        return n;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        ensureOpen();
+        return chars.hasRemaining() || bytes.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            closeChannel();
+        } finally {
+            if (pool != null) {
+                pool.give(chars);
+                pool.give(bytes);
+            }
+        }
+    }
+
+    /**
+     * Closes whatever the bytes come from, when this is closed.
+     *
+     * @throws IOException From the channel
+     */
+    protected void closeChannel() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Makes more bytes available in bytes, keeping any that have not been decoded yet.
+     *
+     * @return false if there is nothing more to read
+     *
+     * @throws IOException From the channel
+     */
+    protected boolean fill() throws IOException {
+        bytes.compact();
+        int n;
+        try {
+            n = channel.read(bytes);
+        } finally {
+            bytes.flip();
+        }
+        return n >= 0;
+    }
+
+    // Refills chars, returns false at the end of the input
+    private boolean decode() throws IOException {
+        chars.clear();
+        try {
+            CoderResult result;
+            while (!finished && chars.position() == 0) {
+                result = decoder.decode(bytes, chars, endOfInput);
+                if (result.isOverflow()) break;
+
+                if (endOfInput) {
+                    decoder.flush(chars);
+                    finished = true;
+                } else if (chars.position() == 0) {
+                    // Only go back to the channel when we have nothing to hand out
+                    endOfInput = !fill();
+                }
+            }
+        } finally {
+            chars.flip();
+        }
+        return chars.hasRemaining();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Reader closed.");
+    }
+}
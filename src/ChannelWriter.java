@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Objects;
+
+/**
+ * A Writer that encodes characters itself and writes the bytes straight to a channel.
+ *
+ * Unlike a BufferedWriter over a FileWriter, the size of the byte buffer, whether it
+ * is a direct buffer and the charset used to encode it are all up to the caller.
+ * Characters that can't be encoded are replaced, the same as OutputStreamWriter does.
+ */
+public class ChannelWriter extends Writer {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    protected final WritableByteChannel channel;
+    protected final CharsetEncoder      encoder;
+    protected final CharBuffer          chars;
+    protected final BufferPool          pool;
+
+    // Kept ready for writing into
+    protected ByteBuffer bytes;
+
+    private boolean closed = false;
+
+    public ChannelWriter(WritableByteChannel channel, Charset charset) {
+        this(channel, charset, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    public ChannelWriter(WritableByteChannel channel, Charset charset, int bufferSize, boolean direct) {
+        this(channel, charset, direct ? ByteBuffer.allocateDirect(ChannelReader.checkSize(bufferSize))
+                                      : ByteBuffer.allocate(ChannelReader.checkSize(bufferSize)),
+             CharBuffer.allocate(bufferSize), null);
+    }
+
+    /**
+     * Borrows its buffers from pool and gives them back when closed.
+     */
+    public ChannelWriter(WritableByteChannel channel, Charset charset, int bufferSize, boolean direct,
+                         BufferPool pool) {
+        this(channel, charset, pool.takeBytes(ChannelReader.checkSize(bufferSize), direct),
+             pool.takeChars(bufferSize), pool);
+    }
+
+    /**
+     * @param bytes Ready for writing into
+     * @param chars Any state, it is cleared
+     * @param pool Where to give both buffers back to on close, or null
+     */
+    protected ChannelWriter(WritableByteChannel channel, Charset charset, ByteBuffer bytes, CharBuffer chars,
+                            BufferPool pool) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = bytes;
+        this.chars = chars.clear();
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (!chars.hasRemaining()) encode(false);
+        chars.put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        ensureOpen();
+
+        int n;
+        while (len > 0) {
+            if (!chars.hasRemaining()) encode(false);
+            n = Math.min(len, chars.remaining());
+            chars.put(cbuf, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, str.length());
+        ensureOpen();
+
+        int n;
+        while (len > 0) {
+            if (!chars.hasRemaining()) encode(false);
+            n = Math.min(len, chars.remaining());
+            chars.put(str, off, off + n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        encode(false);
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            encode(true);
+            drain();
+            finish();
+        } finally {
+            closed = true;
+            try {
+                closeChannel();
+            } finally {
+                if (pool != null) {
+                    pool.give(chars);
+                    pool.give(bytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the encoded bytes out of bytes and leaves it ready to be written into again.
+     *
+     * @throws IOException From the channel
+     */
+    protected void drain() throws IOException {
+        bytes.flip();
+        try {
+            while (bytes.hasRemaining()) channel.write(bytes);
+        } finally {
+            bytes.clear();
+        }
+    }
+
+    /**
+     * Called when there is no room left in bytes for the next encoded character.
+     *
+     * @throws IOException From the channel
+     */
+    protected void makeRoom() throws IOException {
+        drain();
+    }
+
+    /**
+     * Called once everything has been drained, just before the channel is closed.
+     *
+     * @throws IOException From the channel
+     */
+    protected void finish() throws IOException {}
+
+    /**
+     * Closes whatever the bytes go to, last thing when this is closed.
+     *
+     * @throws IOException From the channel
+     */
+    protected void closeChannel() throws IOException {
+        channel.close();
+    }
+
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        try {
+            while (encoder.encode(chars, bytes, endOfInput).isOverflow()) makeRoom();
+            if (endOfInput) while (encoder.flush(bytes).isOverflow()) makeRoom();
+        } finally {
+            // Keeps a trailing high surrogate until its pair arrives
+            chars.compact();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Writer closed.");
+    }
+}
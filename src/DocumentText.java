@@ -0,0 +1,88 @@
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * The text of a Document as a CharSequence, so it can be searched with a Matcher without
+ * copying it all out first.
+ *
+ * The chars are read a window at a time under the document's read lock, so this can be
+ * used off the event thread. Matching reads mostly forwards, so each window starts a little
+ * before the char asked for and runs on after it. The document must not be changed while
+ * this is in use, as nothing here notices if it is.
+ */
+public class DocumentText implements CharSequence {
+    public static final int WINDOW_SIZE = 1 << 16;
+    // How far back of the char asked for a window starts, for patterns that look back a bit
+    private static final int BACK = 1 << 8;
+
+    protected final Document doc;
+
+    private final int    length;
+    private final char[] window      = new char[WINDOW_SIZE];
+    private int          windowStart = 0;
+    private int          windowEnd   = 0;
+
+    public DocumentText(Document doc) {
+        this.doc = doc;
+        this.length = doc.getLength();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < windowStart || index >= windowEnd) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Invalid index: " + index);
+            this.load(Math.max(0, index - BACK));
+        }
+        return window[index - windowStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("Invalid range: " + start + " to " + end);
+        if (start >= windowStart && end <= windowEnd)
+            return new String(window, start - windowStart, end - start);
+        try {
+            return doc.getText(start, end - start);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException("Document changed while being read.", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.subSequence(0, length).toString();
+    }
+
+    /**
+     * Called each time a new window is read, with where it starts. Does nothing, but can
+     * be overridden to report progress or to stop a search by throwing.
+     */
+    protected void loaded(int offset) {
+    }
+
+    private void load(int offset) {
+        this.loaded(offset);
+        int n = Math.min(WINDOW_SIZE, length - offset);
+        doc.render(() -> {
+            var text = new Segment();
+            text.setPartialReturn(true);
+            try {
+                for (int done = 0; done < n; done += text.count) {
+                    doc.getText(offset + done, n - done, text);
+                    System.arraycopy(text.array, text.offset, window, done, text.count);
+                }
+            } catch (BadLocationException e) {
+                throw new IllegalStateException("Document changed while being read.", e);
+            }
+        });
+        windowStart = offset;
+        windowEnd = offset + n;
+    }
+}
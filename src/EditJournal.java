@@ -0,0 +1,482 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * A file recording the edits made to a document since it was last saved, so they can be
+ * recovered if the editor stops without saving them.
+ *
+ * The journal starts with a header naming the file the edits apply to (the base) along
+ * with its size and last-modified time, so it is only ever replayed over the same text it
+ * was recorded against. After that come batches of edits. Edits are collected in memory
+ * as they happen, and flush() appends them as one batch, with its length and a CRC32 so a
+ * batch cut short by a crash is ignored when the journal is read back.
+ *
+ * Writing and forcing to disk happen on a thread of the journal's own, one job after
+ * another, so flushing costs the caller only a copy of the batch. Saving a document only
+ * needs the journal emptied, and keeping it up to date costs only the size of the edits,
+ * however big the document is.
+ *
+ * A journal is named after its file, and each new text that hasn't been saved gets one of
+ * its own instead, untitled-N. Journals are locked for as long as they are in use, so two
+ * editors never write to the same one, and one editing a file that another already has open
+ * records into a numbered journal of the file's, such as 1a2b3c-1.
+ *
+ * Everything other than the writing must be called from one thread, normally the event thread.
+ */
+public class EditJournal {
+    public static final Path DIRECTORY = Paths.get(System.getProperty("user.home"), ".TextEditor", "journal");
+
+    private static final int  MAGIC  = 0x54454a31; // "TEJ1"
+    private static final byte INSERT = 'I';
+    private static final byte REMOVE = 'R';
+    // Chars per insert record, so even 3 bytes each fit in one writeUTF
+    private static final int  RECORD_CHARS = 1 << 14;
+
+    private static final String UNTITLED = "untitled-";
+
+    // Journals held by editors in this JVM, as file locks are held by the whole process
+    private static final Set<Path> CLAIMED = ConcurrentHashMap.newKeySet();
+
+    private final Path            path;
+    private final File            base;
+    private final FileChannel     channel;
+    private final ExecutorService writer;
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream      records = new DataOutputStream(pending);
+
+    // Only used by the writer thread
+    private long end;
+
+    private EditJournal(Path path, File base, FileChannel channel, long end) {
+        this.path = path;
+        this.base = base;
+        this.channel = channel;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            var t = new Thread(r, "EditJournal " + path.getFileName());
+            t.setDaemon(true);
+            return t;
+        });
+        this.end = end;
+    }
+
+    // The nth journal base may have, the first being plain for a file's and untitled-0 for new texts.
+    // Different files can share one, so what it was recorded against is checked when it is read back.
+    private static Path pathFor(File base, int n) {
+        if (base == null) return DIRECTORY.resolve(UNTITLED + n + ".journal");
+        String name = Integer.toHexString(base.getAbsolutePath().hashCode());
+        return DIRECTORY.resolve(n == 0 ? name + ".journal" : name + "-" + n + ".journal");
+    }
+
+    // Matches every journal base may have
+    private static String globFor(File base) {
+        if (base == null) return UNTITLED + "*.journal";
+        String name = Integer.toHexString(base.getAbsolutePath().hashCode());
+        return "{" + name + "," + name + "-*}.journal";
+    }
+
+    /**
+     * Starts an empty journal for base.
+     *
+     * It gets the first of base's journals that isn't in use and has no edits in it, so ones
+     * left by an earlier session are still there to be recovered, and a second editor with
+     * the same file open records into a journal of its own.
+     *
+     * @param base The file being edited, or null for a new text that hasn't been saved
+     */
+    public static EditJournal create(File base) throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Path path;
+        FileChannel channel;
+        for (int n = 0; ; n++) {
+            path = pathFor(base, n);
+            channel = claim(path);
+            if (channel == null) continue;
+            Recovery left;
+            try {
+                left = read(path, channel);
+            } catch (IOException | RuntimeException e) {
+                release(path, channel);
+                throw e;
+            }
+            if (left == null || left.edits == 0) break;
+            release(path, channel);
+        }
+
+        var journal = new EditJournal(path, base, channel, 0);
+        journal.reset();
+        return journal;
+    }
+
+    /**
+     * Reads back a journal for base with edits in it, if there is one that isn't in use by
+     * another editor. It is then held until the Recovery is resumed or discarded.
+     *
+     * @param base The file being edited, or null for a new text that hasn't been saved
+     *
+     * @return The edits, or null if there aren't any to recover
+     *
+     * @throws IOException If the journal couldn't be read
+     */
+    public static Recovery recover(File base) throws IOException {
+        if (!Files.isDirectory(DIRECTORY)) return null;
+        File absolute = base != null ? base.getAbsoluteFile() : null;
+        try (var journals = Files.newDirectoryStream(DIRECTORY, globFor(base))) {
+            FileChannel channel;
+            Recovery recovery;
+            for (var path : journals) {
+                channel = claim(path);
+                if (channel == null) continue;
+                try {
+                    recovery = read(path, channel);
+                } catch (IOException | RuntimeException e) {
+                    release(path, channel);
+                    throw e;
+                }
+                // Skipping another file's journal with the same name
+                if (recovery != null && recovery.edits > 0 && Objects.equals(recovery.base, absolute)) {
+                    recovery.channel = channel;
+                    return recovery;
+                }
+                release(path, channel);
+            }
+        }
+        return null;
+    }
+
+    // Opens and locks a journal, or returns null if another editor has it
+    private static FileChannel claim(Path path) throws IOException {
+        if (!CLAIMED.add(path)) return null;
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+            if (channel.tryLock() != null) return channel;
+        } catch (IOException | RuntimeException e) {
+            release(path, channel);
+            throw e;
+        }
+        release(path, channel);
+        return null;
+    }
+
+    private static void release(Path path, FileChannel channel) throws IOException {
+        try {
+            if (channel != null) channel.close();
+        } finally {
+            CLAIMED.remove(path);
+        }
+    }
+
+    /**
+     * @return The file the most recently written journal with edits in it belongs to, or
+     *         null if there isn't one that still matches its file and isn't in use
+     */
+    public static File lastEdited() {
+        if (!Files.isDirectory(DIRECTORY)) return null;
+
+        Recovery newest = null;
+        long newestTime = Long.MIN_VALUE;
+        long time;
+        FileChannel channel;
+        Recovery recovery;
+        try (var journals = Files.newDirectoryStream(DIRECTORY, "*.journal")) {
+            for (var path : journals) {
+                // Untitled ones have no file to open
+                if (path.getFileName().toString().startsWith(UNTITLED)) continue;
+                try {
+                    time = Files.getLastModifiedTime(path).toMillis();
+                    if (time <= newestTime) continue;
+                    // Only held while reading it, and never one an editor here or elsewhere has
+                    channel = claim(path);
+                    if (channel == null) continue;
+                    try {
+                        recovery = read(path, channel);
+                    } finally {
+                        release(path, channel);
+                    }
+                    if (recovery == null || recovery.edits == 0 || recovery.base == null || !recovery.matches())
+                        continue;
+                    newest = recovery;
+                    newestTime = time;
+                } catch (IOException e) {
+                    // Not readable, so not one to recover
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return newest != null ? newest.base : null;
+    }
+
+    // Everything in the journal up to the first batch that is cut short or damaged. Read
+    // through channel, which is left open, as closing any other handle on a locked journal
+    // would unlock it on some systems.
+    private static Recovery read(Path path, FileChannel channel) throws IOException {
+        channel.position(0);
+        var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        String basePath;
+        long size, modified;
+        try {
+            if (in.readInt() != MAGIC) return null;
+            basePath = in.readUTF();
+            size = in.readLong();
+            modified = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        var records = new ByteArrayOutputStream();
+        long valid = headerLength(basePath);
+        long total = channel.size();
+        int edits = 0;
+        var crc = new CRC32();
+        int length, check;
+        byte[] batch;
+        while (valid + 8 <= total) {
+            length = in.readInt();
+            check = in.readInt();
+            if (length < 0 || length > total - valid - 8) break;
+            batch = in.readNBytes(length);
+            crc.reset();
+            crc.update(batch);
+            if ((int) crc.getValue() != check) break;
+            records.write(batch);
+            edits += countRecords(batch);
+            valid += 8 + length;
+        }
+        return new Recovery(path, basePath.isEmpty() ? null : new File(basePath), size, modified,
+                            records.toByteArray(), edits, valid);
+    }
+
+    private static int countRecords(byte[] batch) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(batch));
+        int n = 0;
+        while (in.available() > 0) {
+            if (in.readByte() == INSERT) {
+                in.readInt();
+                in.readUTF();
+            } else {
+                in.readInt();
+                in.readInt();
+            }
+            n++;
+        }
+        return n;
+    }
+
+    private static long headerLength(String basePath) throws IOException {
+        var header = new DataOutputStream(new ByteArrayOutputStream());
+        header.writeUTF(basePath);
+        return 4 + header.size() + 16;
+    }
+
+    /**
+     * Records that text was inserted at offset. Nothing is written until flush().
+     */
+    public void inserted(int offset, String text) {
+        try {
+            for (int i = 0, n; i < text.length(); i += n) {
+                n = Math.min(RECORD_CHARS, text.length() - i);
+                records.writeByte(INSERT);
+                records.writeInt(offset + i);
+                records.writeUTF(text.substring(i, i + n));
+            }
+        } catch (IOException e) {
+            // Only ever writing to memory
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records that length chars were removed from offset. Nothing is written until flush().
+     */
+    public void removed(int offset, int length) {
+        try {
+            records.writeByte(REMOVE);
+            records.writeInt(offset);
+            records.writeInt(length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the edits recorded since the last flush to the journal as one batch.
+     *
+     * @return Completes once the batch is on disk
+     */
+    public CompletableFuture<Void> flush() {
+        if (pending.size() == 0) return CompletableFuture.completedFuture(null);
+        byte[] batch = pending.toByteArray();
+        pending.reset();
+
+        return CompletableFuture.runAsync(() -> {
+            var crc = new CRC32();
+            crc.update(batch);
+            var buffer = ByteBuffer.allocate(8 + batch.length);
+            buffer.putInt(batch.length).putInt((int) crc.getValue()).put(batch).flip();
+            try {
+                while (buffer.hasRemaining()) end += channel.write(buffer, end);
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, writer);
+    }
+
+    // Empties the journal, dropping any edits not yet flushed
+    private CompletableFuture<Void> reset() {
+        pending.reset();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                var bytes = new ByteArrayOutputStream();
+                var header = new DataOutputStream(bytes);
+                header.writeInt(MAGIC);
+                header.writeUTF(base != null ? base.getAbsolutePath() : "");
+                header.writeLong(base != null ? base.length() : 0);
+                header.writeLong(base != null ? base.lastModified() : 0);
+
+                channel.truncate(0);
+                var buffer = ByteBuffer.wrap(bytes.toByteArray());
+                end = 0;
+                while (buffer.hasRemaining()) end += channel.write(buffer, end);
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, writer);
+    }
+
+    /**
+     * Stops journaling and removes the journal, for when its edits are no longer wanted.
+     * Waits for anything already being written.
+     */
+    public void delete() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Deleted while still held, so no other editor can take it up in between
+        try {
+            Files.deleteIfExists(path);
+        } finally {
+            release(path, channel);
+        }
+    }
+
+    /**
+     * Edits read back from a journal.
+     */
+    public static class Recovery {
+        public final File base;
+        public final int  edits;
+
+        private final Path   path;
+        private final long   baseSize;
+        // Held open and locked until the edits are resumed or discarded
+        private FileChannel  channel;
+        private final long   baseModified;
+        private final byte[] records;
+        private final long   length;
+
+        private Recovery(Path path, File base, long baseSize, long baseModified, byte[] records, int edits,
+                         long length) {
+            this.path = path;
+            this.base = base;
+            this.baseSize = baseSize;
+            this.baseModified = baseModified;
+            this.records = records;
+            this.edits = edits;
+            this.length = length;
+        }
+
+        /**
+         * @return Whether the base is still as it was when the edits were recorded
+         */
+        public boolean matches() {
+            if (base == null) return true;
+            return base.length() == baseSize && base.lastModified() == baseModified;
+        }
+
+        /**
+         * Makes the recorded edits to doc, which should hold the text of the base.
+         *
+         * @throws BadLocationException If doc isn't the text the edits were made to
+         */
+        public void replay(Document doc) throws BadLocationException {
+            var in = new DataInputStream(new ByteArrayInputStream(records));
+            try {
+                while (in.available() > 0) {
+                    if (in.readByte() == INSERT) {
+                        int offset = in.readInt();
+                        doc.insertString(offset, in.readUTF(), null);
+                    } else {
+                        int offset = in.readInt();
+                        doc.remove(offset, in.readInt());
+                    }
+                }
+            } catch (IOException e) {
+                // Only ever reading from memory, and each batch was checked when read
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Carries on recording into the journal these edits came from, after them.
+         */
+        public EditJournal resume() throws IOException {
+            if (channel == null) throw new IllegalStateException("Already resumed or discarded.");
+            var journal = new EditJournal(path, base, channel, length);
+            channel = null;
+            journal.channel.truncate(length);
+            return journal;
+        }
+
+        /**
+         * Deletes the journal these edits came from, for when they aren't wanted.
+         */
+        public void discard() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Left behind, it is offered again or replaced later
+            }
+            if (channel != null) {
+                try {
+                    release(path, channel);
+                } catch (IOException e) {
+                    // Closing only gives up the lock, which is gone either way
+                }
+                channel = null;
+            }
+        }
+    }
+}
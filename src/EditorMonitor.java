@@ -0,0 +1,225 @@
+import java.awt.EventQueue;
+import java.awt.event.KeyEvent;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Keeps track of how quickly an editor responds, so reports of it hanging come with numbers
+ * and with where it was stuck.
+ *
+ * Timings are kept in LatencyHistograms by name. Besides whatever is recorded from outside,
+ * a watchdog thread posts an empty event to the event thread every SAMPLE_INTERVAL and times
+ * how long it waits to run, which is how long anything the user did then would have waited.
+ * If it waits longer than the stall threshold, the event thread's stack is taken while it is
+ * still stuck, and kept with the stall.
+ *
+ * Keystroke to paint latency is measured from when a key was pressed, including any time it
+ * sat in the event queue, to the end of the next paint of the text.
+ */
+public class EditorMonitor implements EditorMonitorMBean {
+    public static final String EVENT_DELAY     = "Event thread delay";
+    public static final String KEY_TO_PAINT    = "Keystroke to paint";
+    public static final String ACTION_PREFIX   = "Action: ";
+    public static final long   SAMPLE_INTERVAL = 100;
+    public static final long   DEFAULT_STALL   = 250;
+    public static final int    KEPT_STALLS     = 20;
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final ArrayDeque<Stall>             stalls     = new ArrayDeque<>();
+    private final AtomicLong                    stallCount = new AtomicLong();
+    private final Thread                        watchdog;
+
+    private String          name;
+    private ObjectName      registered;
+    private volatile long   stallThreshold = DEFAULT_STALL;
+    private volatile Thread eventThread;
+    // When the oldest keystroke not painted yet was pressed, or 0 if there isn't one
+    private long keyPressedAt;
+
+    public EditorMonitor() {
+        watchdog = new Thread(this::watch, "EditorMonitor watchdog");
+        watchdog.setDaemon(true);
+    }
+
+    /**
+     * Starts the watchdog and makes this visible through JMX as name. JMX takes a while to
+     * load, so the watchdog registers this once it is running rather than holding up startup.
+     */
+    public void start(String name) {
+        this.name = name;
+        watchdog.start();
+    }
+
+    /**
+     * Stops the watchdog and removes this from JMX. The watchdog keeps the event queue busy,
+     * so AWT won't shut itself down once the windows are closed until this is called.
+     * TextEditor calls it when its window is disposed.
+     */
+    public synchronized void stop() {
+        watchdog.interrupt();
+        name = null;
+        if (registered == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+        } catch (JMException e) {
+            // Already gone
+        }
+        registered = null;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    public void record(String name, long nanos) {
+        this.histogram(name).record(nanos);
+    }
+
+    /**
+     * Notes a keystroke that should show up on screen. Must be called on the event thread.
+     */
+    public void keyPressed(KeyEvent e) {
+        if (keyPressedAt != 0) return;
+        long queued = Math.max(0, System.currentTimeMillis() - e.getWhen());
+        keyPressedAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(queued);
+    }
+
+    /**
+     * Notes that the text was painted. Must be called on the event thread.
+     */
+    public void painted() {
+        if (keyPressedAt == 0) return;
+        this.record(KEY_TO_PAINT, System.nanoTime() - keyPressedAt);
+        keyPressedAt = 0;
+    }
+
+    /**
+     * @return Everything recorded, as text for showing to someone
+     */
+    public String report() {
+        var out = new StringBuilder();
+        for (var entry : histograms.entrySet()) {
+            out.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            out.append(entry.getValue().toBars(40)).append('\n');
+        }
+        out.append("Stalls over ").append(stallThreshold).append(" ms: ").append(stallCount.get()).append('\n');
+        for (var stall : this.getRecentStalls()) out.append('\n').append(stall);
+        return out.toString();
+    }
+
+    @Override
+    public String[] getHistograms() {
+        return histograms.entrySet().stream().map(e -> e.getKey() + ": " + e.getValue()).toArray(String[]::new);
+    }
+
+    @Override
+    public String[] getRecentStalls() {
+        synchronized (stalls) {
+            return stalls.stream().map(Stall::toString).toArray(String[]::new);
+        }
+    }
+
+    @Override
+    public long getStallCount() {
+        return stallCount.get();
+    }
+
+    @Override
+    public long getStallThresholdMillis() {
+        return stallThreshold;
+    }
+
+    @Override
+    public void setStallThresholdMillis(long millis) {
+        if (millis <= 0) throw new IllegalArgumentException("Threshold must be positive: " + millis);
+        stallThreshold = millis;
+    }
+
+    @Override
+    public void reset() {
+        for (var h : histograms.values()) h.reset();
+        synchronized (stalls) {
+            stalls.clear();
+        }
+        stallCount.set(0);
+    }
+
+    private synchronized void register() {
+        if (name == null) return;
+        try {
+            registered = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+        } catch (JMException e) {
+            // Already taken by another editor in this VM, which is being watched through its own
+            registered = null;
+            System.err.println("Could not register " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void watch() {
+        this.register();
+        try {
+            while (true) {
+                var ran = new CountDownLatch(1);
+                var ranAt = new AtomicLong();
+                long posted = System.nanoTime();
+                EventQueue.invokeLater(() -> {
+                    ranAt.set(System.nanoTime());
+                    eventThread = Thread.currentThread();
+                    ran.countDown();
+                });
+
+                // Still stuck after the threshold, so this is where
+                StackTraceElement[] stack = null;
+                Thread stuck = eventThread;
+                if (!ran.await(stallThreshold, TimeUnit.MILLISECONDS) && stuck != null) {
+                    stack = stuck.getStackTrace();
+                }
+                ran.await();
+
+                long delay = ranAt.get() - posted;
+                this.record(EVENT_DELAY, delay);
+                if (stack != null) this.stalled(new Stall(System.currentTimeMillis(), delay, stack));
+
+                Thread.sleep(SAMPLE_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    private void stalled(Stall stall) {
+        stallCount.incrementAndGet();
+        synchronized (stalls) {
+            stalls.addFirst(stall);
+            while (stalls.size() > KEPT_STALLS) stalls.removeLast();
+        }
+    }
+
+    private static class Stall {
+        private final long                time;
+        private final long                nanos;
+        private final StackTraceElement[] stack;
+
+        private Stall(long time, long nanos, StackTraceElement[] stack) {
+            this.time = time;
+            this.nanos = nanos;
+            this.stack = stack;
+        }
+
+        @Override
+        public String toString() {
+            var out = new StringBuilder(String.format("%tT stalled for %s at%n", time, LatencyHistogram.format(nanos)));
+            for (var frame : stack) out.append("    ").append(frame).append('\n');
+            return out.toString();
+        }
+    }
+}
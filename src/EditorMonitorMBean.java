@@ -0,0 +1,26 @@
+/**
+ * What an EditorMonitor shows through JMX, for looking at a running editor with jconsole
+ * or any other JMX client.
+ */
+public interface EditorMonitorMBean {
+    /**
+     * @return A summary of each histogram, one per line
+     */
+    String[] getHistograms();
+
+    /**
+     * @return The most recent stalls of the event thread, newest first, each with where it was stuck
+     */
+    String[] getRecentStalls();
+
+    long getStallCount();
+
+    long getStallThresholdMillis();
+
+    void setStallThresholdMillis(long millis);
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+}
@@ -1,7 +1,9 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -12,11 +14,52 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 // Examples of instantiation
 public class IOHelper {
+    public static final int POOLED_BUFFER_SIZE = 1 << 13;
+
+    private static volatile BufferPool bufferPool = null;
+
+    /**
+     * Makes the readers and writers below borrow their buffers from a pool.
+     *
+     * Normally every Reader or Writer allocates its own buffers, which become garbage
+     * as soon as it is closed. When lots of small files are opened that adds up. With a
+     * pool set, makeReader, makeWriter, makePrintWriter (for files and streams) and the
+     * channel readers and writers take their buffers from the pool and give them back
+     * when closed. So always close them, or the buffers are just left for the garbage
+     * collector as before.
+     *
+     * Pooled readers and writers for files and streams use the default charset, the
+     * same as FileReader and FileWriter.
+     *
+     * @param pool The pool to use, or null to go back to allocating buffers
+     */
+    public static void setBufferPool(BufferPool pool) {
+        bufferPool = pool;
+    }
+
+    /**
+     * The pool set by setBufferPool, use it to check its hit and miss counts.
+     *
+     * @return The pool, or null if there isn't one
+     */
+    public static BufferPool getBufferPool() {
+        return bufferPool;
+    }
 
     /**
      * How to make a Reader from a file.
@@ -36,6 +79,7 @@ public class IOHelper {
      * @throws FileNotFoundException From FileReader
      */
     public static Reader makeReader(File toRead) throws FileNotFoundException {
+        if (bufferPool != null) return makeReader(new FileInputStream(toRead));
         return new BufferedReader(new FileReader(toRead));
     }
 
@@ -55,6 +99,9 @@ public class IOHelper {
      * @return The Reader
      */
     public static Reader makeReader(InputStream toRead) {
+        var pool = bufferPool;
+        if (pool != null)
+            return new StreamReader(toRead, Charset.defaultCharset(), POOLED_BUFFER_SIZE, pool);
         return new BufferedReader(new InputStreamReader(toRead));
     }
 
@@ -96,6 +143,7 @@ public class IOHelper {
      * @throws IOException From FileWriter
      */
     public static Writer makeWriter(File writeTo) throws IOException {
+        if (bufferPool != null) return makeWriter(new FileOutputStream(writeTo));
         return new BufferedWriter(new FileWriter(writeTo));
     }
 
@@ -115,6 +163,9 @@ public class IOHelper {
      * @return The Writer
      */
     public static Writer makeWriter(OutputStream writeTo) {
+        var pool = bufferPool;
+        if (pool != null)
+            return new StreamWriter(writeTo, Charset.defaultCharset(), POOLED_BUFFER_SIZE, pool);
         return new BufferedWriter(new OutputStreamWriter(writeTo));
     }
 
@@ -123,17 +174,17 @@ public class IOHelper {
      * Use toString() to get the string value.
      * Writers aren't actually very useful, so usually we use PrintWriters.
      *
-     * Uses a BufferedWriter to help make io more efficient by buffering output.
+     * Uses a StringSink rather than a BufferedWriter around a StringWriter.
      *
-     * Buffering means when you write to the Writer it will hold on to what you wrote
-     * until flush is called or its buffer is full. This means fewer writes, which are slow.
-     *
-     * This, like most io classes throw IOExceptions that may need to be checked for.
+     * There is nothing slow to save up writes for when the text is going into memory,
+     * so buffering would only copy everything twice. A StringSink also grows by adding
+     * chunks instead of copying what it has into a bigger array, and skips the locking
+     * StringWriter does. It is meant to be used from one thread.
      *
      * @return The Writer
      */
-    public static Writer makeWriter() {
-        return new BufferedWriter(new StringWriter());
+    public static StringSink makeWriter() {
+        return new StringSink();
     }
 
     /**
@@ -178,16 +229,411 @@ public class IOHelper {
      * How to make a PrintWriter to a String.
      * Use toString() to get the string value.
      *
-     * Uses a BufferedWriter to help make io more efficient by buffering output.
+     * Writes straight into a StringSink (see makeWriter()), and passes toString() on to it.
      *
-     * Buffering means when you write to the Writer it will hold on to what you wrote
-     * until flush is called or its buffer is full. This means fewer writes, which are slow.
+     * @return The Writer
+     */
+    public static PrintWriter makePrintWriter() {
+        var sink = makeWriter();
+        return new PrintWriter(sink) {
+            @Override
+            public String toString() {
+                return sink.toString();
+            }
+        };
+    }
+
+    /**
+     * How to make a Reader that reads a File through a FileChannel.
      *
-     * This, like most io classes throw IOExceptions that may need to be checked for.
+     * A FileChannel lets us choose how big a buffer to read into and what charset to
+     * decode with. Large buffers mean fewer reads on big files, and a direct buffer
+     * lets the operating system copy straight into it without going through the heap.
+     *
+     * @param toRead The File
+     * @param charset How the bytes in the file are encoded
+     * @param bufferSize How many bytes to read at a time
+     * @param direct Whether to use a direct buffer
+     *
+     * @return The Reader
+     *
+     * @throws IOException From FileChannel
+     */
+    public static Reader makeChannelReader(File toRead, Charset charset, int bufferSize, boolean direct)
+            throws IOException {
+        var channel = FileChannel.open(toRead.toPath(), StandardOpenOption.READ);
+        var pool = bufferPool;
+        try {
+            if (pool != null) return new ChannelReader(channel, charset, bufferSize, direct, pool);
+            return new ChannelReader(channel, charset, bufferSize, direct);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How to make a Reader that reads a File through a FileChannel, with a 64 KB heap buffer.
+     *
+     * @param toRead The File
+     * @param charset How the bytes in the file are encoded
+     *
+     * @return The Reader
+     *
+     * @throws IOException From FileChannel
+     */
+    public static Reader makeChannelReader(File toRead, Charset charset) throws IOException {
+        return makeChannelReader(toRead, charset, ChannelReader.DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * How to make a Reader that reads a File by memory-mapping it.
+     *
+     * Mapping a file asks the operating system to make the file look like memory.
+     * Nothing is copied into our own buffers, pages of the file are loaded as they are
+     * decoded. This is usually the fastest way to read through a very large file.
+     *
+     * @param toRead The File
+     * @param charset How the bytes in the file are encoded
+     * @param regionSize How many bytes of the file to map at a time
+     *
+     * @return The Reader
+     *
+     * @throws IOException From FileChannel
+     */
+    public static Reader makeMappedReader(File toRead, Charset charset, int regionSize) throws IOException {
+        var channel = FileChannel.open(toRead.toPath(), StandardOpenOption.READ);
+        try {
+            return new MappedReader(channel, charset, regionSize);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How to make a Reader that reads a File by memory-mapping it, 64 MB at a time.
+     *
+     * @param toRead The File
+     * @param charset How the bytes in the file are encoded
+     *
+     * @return The Reader
+     *
+     * @throws IOException From FileChannel
+     */
+    public static Reader makeMappedReader(File toRead, Charset charset) throws IOException {
+        return makeMappedReader(toRead, charset, MappedReader.DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * How to make a Writer that writes to a File through a FileChannel.
+     *
+     * Like makeChannelReader, we choose the buffer size, whether it is direct and the
+     * charset to encode with. The file is replaced if it already exists.
+     *
+     * @param writeTo The File
+     * @param charset How to encode the text
+     * @param bufferSize How many bytes to hold on to before writing
+     * @param direct Whether to use a direct buffer
      *
      * @return The Writer
+     *
+     * @throws IOException From FileChannel
      */
-    public static PrintWriter makePrintWriter() {
-        return new PrintWriter(makeWriter());
+    public static Writer makeChannelWriter(File writeTo, Charset charset, int bufferSize, boolean direct)
+            throws IOException {
+        var channel = FileChannel.open(writeTo.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        var pool = bufferPool;
+        try {
+            if (pool != null) return new ChannelWriter(channel, charset, bufferSize, direct, pool);
+            return new ChannelWriter(channel, charset, bufferSize, direct);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How to make a Writer that writes to a File through a FileChannel, with a 64 KB heap buffer.
+     *
+     * @param writeTo The File
+     * @param charset How to encode the text
+     *
+     * @return The Writer
+     *
+     * @throws IOException From FileChannel
+     */
+    public static Writer makeChannelWriter(File writeTo, Charset charset) throws IOException {
+        return makeChannelWriter(writeTo, charset, ChannelWriter.DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * How to make a Writer that writes to a File by memory-mapping it.
+     *
+     * The file is mapped a region at a time as it grows and is trimmed to the right
+     * length when the Writer is closed, so always close it. The file is replaced if
+     * it already exists.
+     *
+     * @param writeTo The File
+     * @param charset How to encode the text
+     * @param regionSize How many bytes of the file to map at a time
+     *
+     * @return The Writer
+     *
+     * @throws IOException From FileChannel
+     */
+    public static Writer makeMappedWriter(File writeTo, Charset charset, int regionSize) throws IOException {
+        var channel = FileChannel.open(writeTo.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+        // Mapping the first region can fail, and then nothing else will close the channel
+        try {
+            return new MappedWriter(channel, charset, regionSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How to make a Writer that writes to a File by memory-mapping it, 16 MB at a time.
+     *
+     * @param writeTo The File
+     * @param charset How to encode the text
+     *
+     * @return The Writer
+     *
+     * @throws IOException From FileChannel
+     */
+    public static Writer makeMappedWriter(File writeTo, Charset charset) throws IOException {
+        return makeMappedWriter(writeTo, charset, MappedWriter.DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * How to copy a File without reading it into Java at all.
+     *
+     * FileChannel.transferTo lets the operating system move the bytes from one file to
+     * the other directly, which is much faster than reading and writing through buffers.
+     * It may not move everything in one go, so we keep asking until it is done.
+     * The destination is replaced if it already exists.
+     *
+     * @param from The File to copy
+     * @param to Where to copy it to
+     *
+     * @return How many bytes were copied
+     *
+     * @throws IOException From FileChannel
+     */
+    public static long copy(File from, File to) throws IOException {
+        try (var in = FileChannel.open(from.toPath(), StandardOpenOption.READ);
+             var out = FileChannel.open(to.toPath(), StandardOpenOption.CREATE,
+                                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) position += in.transferTo(position, size - position, out);
+            return position;
+        }
+    }
+
+    /**
+     * How to make a Writer that gzips what is written to it, using every processor.
+     *
+     * Compressing is usually much slower than writing the result, so this cuts the text
+     * into blocks and compresses several at once (see ParallelDeflaterOutputStream).
+     * The result is one normal gzip file that gunzip or makeGzipReader can read.
+     *
+     * Always close it, the end of the gzip file is only written then.
+     *
+     * @param writeTo The OutputStream
+     * @param charset How to encode the text
+     *
+     * @return The Writer
+     *
+     * @throws IOException From writing the gzip header
+     */
+    public static Writer makeGzipWriter(OutputStream writeTo, Charset charset) throws IOException {
+        var out = new ParallelDeflaterOutputStream(writeTo, ParallelDeflaterOutputStream.Format.GZIP);
+        return new OutputStreamWriter(out, charset);
+    }
+
+    /**
+     * How to make a Writer that gzips what is written to it into a File, using every processor.
+     *
+     * @param writeTo The File
+     * @param charset How to encode the text
+     *
+     * @return The Writer
+     *
+     * @throws IOException From FileOutputStream
+     */
+    public static Writer makeGzipWriter(File writeTo, Charset charset) throws IOException {
+        var out = new FileOutputStream(writeTo);
+        // Writing the header can fail, and then nothing else will close the file
+        try {
+            return makeGzipWriter(out, charset);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How to make a Writer that deflates what is written to it, using every processor.
+     *
+     * Just like makeGzipWriter, but writes the zlib format, which is what
+     * InflaterInputStream and HTTP's "deflate" encoding expect.
+     *
+     * @param writeTo The OutputStream
+     * @param charset How to encode the text
+     *
+     * @return The Writer
+     *
+     * @throws IOException From writing the zlib header
+     */
+    public static Writer makeDeflateWriter(OutputStream writeTo, Charset charset) throws IOException {
+        var out = new ParallelDeflaterOutputStream(writeTo, ParallelDeflaterOutputStream.Format.ZLIB);
+        return new OutputStreamWriter(out, charset);
+    }
+
+    /**
+     * How to make a Writer that deflates what is written to it into a File, using every processor.
+     *
+     * @param writeTo The File
+     * @param charset How to encode the text
+     *
+     * @return The Writer
+     *
+     * @throws IOException From FileOutputStream
+     */
+    public static Writer makeDeflateWriter(File writeTo, Charset charset) throws IOException {
+        var out = new FileOutputStream(writeTo);
+        try {
+            return makeDeflateWriter(out, charset);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How to make a Reader for gzipped text.
+     *
+     * Unzipping can't be split up like zipping can, but it can happen on another thread
+     * while we work on what has already been unzipped (see ReadAheadInputStream).
+     *
+     * @param toRead The InputStream
+     * @param charset How the unzipped bytes are encoded
+     *
+     * @return The Reader
+     *
+     * @throws IOException From reading the gzip header
+     */
+    public static Reader makeGzipReader(InputStream toRead, Charset charset) throws IOException {
+        return new InputStreamReader(new ReadAheadInputStream(new GZIPInputStream(toRead, 1 << 16)), charset);
+    }
+
+    /**
+     * How to make a Reader for a gzipped File.
+     *
+     * @param toRead The File
+     * @param charset How the unzipped bytes are encoded
+     *
+     * @return The Reader
+     *
+     * @throws IOException From FileInputStream, or reading the gzip header
+     */
+    public static Reader makeGzipReader(File toRead, Charset charset) throws IOException {
+        var in = new FileInputStream(toRead);
+        // A file that isn't gzipped fails at the header, and then nothing else will close it
+        try {
+            return makeGzipReader(in, charset);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How to make a Reader for deflated (zlib) text, unzipping ahead on another thread.
+     *
+     * @param toRead The InputStream
+     * @param charset How the unzipped bytes are encoded
+     *
+     * @return The Reader
+     */
+    public static Reader makeDeflateReader(InputStream toRead, Charset charset) {
+        return new InputStreamReader(new ReadAheadInputStream(new InflaterInputStream(toRead)), charset);
+    }
+
+    /**
+     * How to read a whole File without waiting for it.
+     *
+     * Everything above blocks: the thread calling read() sits and waits for the disk.
+     * This starts the read and returns a CompletableFuture straight away, which is
+     * completed with the contents once they are in. Use thenApply, thenAccept etc. to
+     * say what to do with them (see AsyncFileIO).
+     *
+     * @param toRead The File
+     *
+     * @return The contents, once read
+     */
+    public static CompletableFuture<ByteBuffer> readAsync(File toRead) {
+        return AsyncFileIO.read(toRead.toPath());
+    }
+
+    /**
+     * How to read part of a File without waiting for it.
+     *
+     * @param toRead The File
+     * @param position Where to start reading
+     * @param length How many bytes to read
+     *
+     * @return What was read, once read
+     */
+    public static CompletableFuture<ByteBuffer> readAsync(File toRead, long position, int length) {
+        return AsyncFileIO.read(toRead.toPath(), position, length);
+    }
+
+    /**
+     * How to write a whole File without waiting for it.
+     * The File is replaced if it already exists.
+     *
+     * @param writeTo The File
+     * @param data What to write
+     *
+     * @return How many bytes were written, once written
+     */
+    public static CompletableFuture<Long> writeAsync(File writeTo, ByteBuffer data) {
+        return AsyncFileIO.write(writeTo.toPath(), data);
+    }
+
+    /**
+     * How to read lots of Files at once without waiting for them.
+     *
+     * Up to 256 are read at the same time, the rest start as earlier ones finish.
+     *
+     * @param toRead The Files
+     *
+     * @return The contents of each File in the same order, once they are all read
+     */
+    public static CompletableFuture<List<ByteBuffer>> readAllAsync(List<File> toRead) {
+        var paths = new ArrayList<Path>(toRead.size());
+        for (var f : toRead) paths.add(f.toPath());
+        return AsyncFileIO.readAll(paths, AsyncFileIO.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * How to read a File as a stream of 64 KB chunks without waiting for them.
+     *
+     * Chunks are only read as fast as the Flow.Subscriber asks for them, so a slow
+     * subscriber never has the whole File pushed at it.
+     *
+     * @param toRead The File
+     *
+     * @return The Publisher
+     */
+    public static Flow.Publisher<ByteBuffer> publishAsync(File toRead) {
+        return AsyncFileIO.publish(toRead.toPath(), AsyncFileIO.DEFAULT_CHUNK_SIZE);
     }
 }
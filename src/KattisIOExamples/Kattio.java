@@ -24,6 +24,10 @@ package arc.IO; /** Simple yet moderately fast I/O routines.
  *   exception if there is no more data in the input, so it is generally
  *   a good idea to use hasMoreTokens() to check for end-of-file.
  *
+ * - Passing writeBehind = true writes output from a background thread
+ *   (see WriteBehindOutputStream). flush() then returns straight away;
+ *   use sync() to wait until the output has actually been written.
+ *
  * @author: Kattis
  */
 
@@ -45,6 +49,24 @@ public class Kattio extends PrintWriter {
         super(new BufferedOutputStream(o));
         r = new BufferedReader(new InputStreamReader(i));
     }
+    public Kattio(InputStream i, OutputStream o, boolean writeBehind) {
+        this(i, writeBehind ? new WriteBehindOutputStream(o) : null, o);
+    }
+    private Kattio(InputStream i, WriteBehindOutputStream w, OutputStream o) {
+        super(w != null ? w : new BufferedOutputStream(o));
+        r = new BufferedReader(new InputStreamReader(i));
+        wb = w;
+    }
+
+    public void sync() {
+        flush();
+        if (wb != null)
+            try {
+                wb.sync();
+            } catch (IOException e) {
+                setError();
+            }
+    }
 
     public boolean hasMoreTokens() {
         return peekToken() != null;
@@ -68,6 +90,7 @@ public class Kattio extends PrintWriter {
 
 
 
+    private WriteBehindOutputStream wb;
     private BufferedReader r;
     private String line;
     private StringTokenizer st;
@@ -24,6 +24,10 @@ package arc.IO; /** Simple yet moderately fast I/O routines.
  *   exception if there is no more data in the input, so it is generally
  *   a good idea to use hasMore() to check for end-of-file.
  *
+ * - Passing writeBehind = true writes output from a background thread
+ *   (see WriteBehindOutputStream). flush() then returns straight away;
+ *   use sync() to wait until the output has actually been written.
+ *
  * @author: Kattis
  */
 
@@ -35,6 +39,7 @@ public abstract class MyKattio extends PrintWriter {
 
     public static String path = "./Solutions/src";
 
+    protected WriteBehindOutputStream wb;
     protected BufferedReader r;
     protected String token;
 
@@ -51,6 +56,14 @@ public abstract class MyKattio extends PrintWriter {
         super(new BufferedOutputStream(o));
         r = new BufferedReader(new InputStreamReader(i));
     }
+    public MyKattio(InputStream i, OutputStream o, boolean writeBehind) {
+        this(i, writeBehind ? new WriteBehindOutputStream(o) : null, o);
+    }
+    private MyKattio(InputStream i, WriteBehindOutputStream w, OutputStream o) {
+        super(w != null ? w : new BufferedOutputStream(o));
+        r = new BufferedReader(new InputStreamReader(i));
+        wb = w;
+    }
 
     public MyKattio(boolean testing) {
         this(testing, System.out);
@@ -95,6 +108,15 @@ public abstract class MyKattio extends PrintWriter {
         } catch (Exception e) {}
     }
 
+    public void sync() {
+        flush();
+        if (wb != null) try {
+            wb.sync();
+        } catch (IOException e) {
+            setError();
+        }
+    }
+
     public boolean hasMore() {
         return peekToken() != null;
     }
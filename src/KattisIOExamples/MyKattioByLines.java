@@ -47,6 +47,10 @@ public class MyKattioByLines extends MyKattio {
         super(i, o);
     }
 
+    public MyKattioByLines(InputStream i, OutputStream o, boolean writeBehind) {
+        super(i, o, writeBehind);
+    }
+
     public MyKattioByLines(boolean testing) {
         super(testing);
     }
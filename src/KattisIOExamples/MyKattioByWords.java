@@ -47,6 +47,10 @@ public class MyKattioByWords extends MyKattio {
         super(i, o);
     }
 
+    public MyKattioByWords(InputStream i, OutputStream o, boolean writeBehind) {
+        super(i, o, writeBehind);
+    }
+
     public MyKattioByWords(boolean testing) {
         super(testing);
     }
@@ -0,0 +1,262 @@
+package arc.IO;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An OutputStream that hands its output to a background thread to be written.
+ *
+ * Writes go into one of a fixed ring of pre-allocated byte buffers. When a buffer
+ * is full, or flush() is called, it is handed to a dedicated I/O thread which drains
+ * it to the underlying OutputStream or FileChannel while the caller keeps going.
+ * The caller only waits if every buffer in the ring is still waiting to be written.
+ *
+ * Ordering:
+ *
+ * - Buffers are always written in the order they were handed over.
+ *
+ * - flush() hands over what has been written so far but does not wait for it.
+ *
+ * - sync() waits until everything handed over has been written and flushed
+ *   (and forced to disk for a FileChannel).
+ *
+ * - close() does the same as sync() and then closes the underlying target.
+ *
+ * Like BufferedOutputStream, this is meant to be written to by one thread at a time.
+ * Errors on the I/O thread are reported by the next write, flush, sync or close.
+ */
+public class WriteBehindOutputStream extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE  = 1 << 16;
+    public static final int DEFAULT_BUFFER_COUNT = 8;
+
+    private static final Slot CLOSE = new Slot(0);
+
+    private final OutputStream out;
+    private final FileChannel  channel;
+
+    private final BlockingQueue<Slot> free;
+    private final BlockingQueue<Slot> full;
+    private final Thread              drainer;
+
+    private final Object drainLock = new Object();
+
+    private Slot    current;
+    private long    submitted;
+    private long    drained;
+    private boolean closed;
+
+    private volatile IOException failure;
+
+    public WriteBehindOutputStream(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    public WriteBehindOutputStream(OutputStream out, int bufferSize, int bufferCount) {
+        this(out, null, bufferSize, bufferCount);
+    }
+
+    public WriteBehindOutputStream(FileChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    public WriteBehindOutputStream(FileChannel channel, int bufferSize, int bufferCount) {
+        this(null, channel, bufferSize, bufferCount);
+    }
+
+    private WriteBehindOutputStream(OutputStream out, FileChannel channel, int bufferSize, int bufferCount) {
+        if (out == null && channel == null) throw new NullPointerException("No output given.");
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        if (bufferCount < 2) throw new IllegalArgumentException("Need at least two buffers: " + bufferCount);
+
+        this.out = out;
+        this.channel = channel;
+
+        // One buffer is always held by the writer, the rest circulate
+        free = new ArrayBlockingQueue<>(bufferCount);
+        full = new ArrayBlockingQueue<>(bufferCount + 1);
+        current = new Slot(bufferSize);
+        for (int i = 1; i < bufferCount; i++) free.add(new Slot(bufferSize));
+
+        drainer = new Thread(this::drain, "write-behind-" + (out != null ? "stream" : "channel"));
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (current.length == current.data.length) handOff();
+        current.data[current.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+
+        int n;
+        while (len > 0) {
+            if (current.length == current.data.length) handOff();
+            n = Math.min(len, current.data.length - current.length);
+            System.arraycopy(b, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Hands everything written so far to the I/O thread without waiting for it to be written.
+     *
+     * @throws IOException If an earlier write on the I/O thread failed
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        handOff();
+        checkFailure();
+    }
+
+    /**
+     * Waits until everything written so far has reached the underlying target.
+     * For a FileChannel this includes forcing the data to the storage device.
+     *
+     * @throws IOException If a write on the I/O thread failed
+     */
+    public void sync() throws IOException {
+        flush();
+        awaitDrained();
+        if (channel != null) channel.force(false);
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        boolean stopping = false;
+        try {
+            handOff();
+            awaitDrained();
+            full.put(CLOSE);
+            stopping = true;
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (failure == null) failure = new InterruptedIOException("Interrupted while closing.");
+        } finally {
+            // There is always room for it, as the queue holds one more than there are buffers
+            if (!stopping) full.offer(CLOSE);
+
+            // The target is closed however the rest went
+            try {
+                if (channel != null) {
+                    if (failure == null) channel.force(false);
+                    channel.close();
+                } else {
+                    out.close();
+                }
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        checkFailure();
+    }
+
+    private void handOff() throws IOException {
+        if (current.length == 0) return;
+        try {
+            full.put(current);
+        } catch (InterruptedException e) {
+            // Nothing was handed over, so current is still ours
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while handing over a buffer.");
+        }
+        submitted++;
+
+        // current now belongs to the I/O thread, so a new one must be taken before anything else.
+        // The I/O thread always gives buffers back, so this only waits for it to catch up.
+        boolean interrupted = false;
+        Slot next = null;
+        while (next == null) {
+            try {
+                next = free.take();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        current = next;
+        if (interrupted) Thread.currentThread().interrupt();
+        checkFailure();
+    }
+
+    private void awaitDrained() throws IOException {
+        synchronized (drainLock) {
+            while (drained < submitted) {
+                try {
+                    drainLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for output to drain.");
+                }
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed.");
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) throw new IOException("Write-behind output failed.", e);
+    }
+
+    // Runs on the I/O thread
+    private void drain() {
+        Slot slot;
+        try {
+            while ((slot = full.take()) != CLOSE) {
+                if (failure == null) {
+                    try {
+                        if (channel != null) {
+                            var buffer = ByteBuffer.wrap(slot.data, 0, slot.length);
+                            while (buffer.hasRemaining()) channel.write(buffer);
+                        } else {
+                            out.write(slot.data, 0, slot.length);
+                            // Only push through to the OS once we have caught up
+                            if (full.isEmpty()) out.flush();
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+
+                slot.length = 0;
+                free.put(slot);
+
+                synchronized (drainLock) {
+                    drained++;
+                    drainLock.notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Write-behind thread interrupted.");
+        }
+    }
+
+    private static class Slot {
+        final byte[] data;
+        int length;
+
+        Slot(int size) {
+            data = new byte[size];
+        }
+    }
+}
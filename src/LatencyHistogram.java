@@ -0,0 +1,108 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took, in buckets that each cover twice the time of the one
+ * before, so a few dozen counters cover everything from nanoseconds to minutes.
+ *
+ * Recording is a couple of atomic adds, so it can be done from any thread and as often
+ * as needed. Percentiles are only known to within their bucket, so they are given as
+ * the bucket's upper bound, which is at most twice the true value.
+ */
+public class LatencyHistogram {
+    // Bucket i counts durations from 2^i up to 2^(i+1) nanoseconds
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+    private final AtomicLong      count   = new AtomicLong();
+    private final AtomicLong      total   = new AtomicLong();
+    private final AtomicLong      max     = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * @param p Between 0 and 1
+     *
+     * @return The time that a fraction p of what was recorded took no longer than, rounded
+     *         up to its bucket, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double p) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * n));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return The count in each bucket that has any, one line each with a bar scaled to the
+     *         fullest bucket
+     */
+    public String toBars(int width) {
+        long most = 1;
+        for (int i = 0; i < buckets.length(); i++) most = Math.max(most, buckets.get(i));
+
+        var out = new StringBuilder();
+        long n;
+        for (int i = 0; i < buckets.length(); i++) {
+            n = buckets.get(i);
+            if (n == 0) continue;
+            out.append(String.format("  < %9s %8d ", format(upperBound(i)), n));
+            for (long j = Math.max(1, n * width / most); j > 0; j--) out.append('#');
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count %d, mean %s, p50 %s, p99 %s, max %s", getCount(), format(getMean()),
+                             format(getPercentile(0.5)), format(getPercentile(0.99)), format(getMax()));
+    }
+
+    /**
+     * @return nanos in the most readable unit
+     */
+    public static String format(long nanos) {
+        if (nanos < 1_000) return nanos + " ns";
+        if (nanos < 1_000_000) return String.format("%.1f us", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format("%.1f ms", nanos / 1e6);
+        return String.format("%.2f s", nanos / 1e9);
+    }
+
+    private static int bucketOf(long nanos) {
+        return nanos == 0 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= Long.SIZE - 2 ? Long.MAX_VALUE : 1L << (bucket + 1);
+    }
+}
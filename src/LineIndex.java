@@ -0,0 +1,245 @@
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+/**
+ * Where each line of a text starts, kept up to date as the text is edited.
+ *
+ * The length of every line (with its line break) is kept in buckets of at most BUCKET_SIZE
+ * lines, and two Fenwick trees hold the chars and the lines in each bucket. Finding the
+ * line of an offset or the offset of a line walks down a tree to the right bucket and then
+ * along it, so both take O(log n + BUCKET_SIZE). Typing within a line changes one length
+ * and updates one path of the tree. Adding or removing lines changes one bucket, splitting
+ * it if it grows too big, then rebuilds the trees, which only have one entry per bucket.
+ *
+ * Like a Document's Elements, offsets run from 0 to the length of the text, and the last
+ * line is the one after the final line break, which is empty if the text ends with one.
+ */
+public class LineIndex {
+    public static final int BUCKET_SIZE = 1 << 10;
+
+    private int[][] buckets  = new int[1][BUCKET_SIZE];
+    private int[]   sizes    = {1};
+    private int[]   totals   = {0};
+    private int     count    = 1;
+    private int[]   charTree;
+    private int[]   lineTree;
+    private int     lines    = 1;
+    private int     length   = 0;
+
+    /**
+     * An index of an empty text, which has one empty line.
+     */
+    public LineIndex() {
+        rebuild();
+    }
+
+    /**
+     * An index of the lines of doc as it is now.
+     */
+    public static LineIndex of(Document doc) {
+        Element root = doc.getDefaultRootElement();
+        int n = root.getElementCount();
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            Element line = root.getElement(i);
+            lengths[i] = line.getEndOffset() - line.getStartOffset();
+        }
+        // The last Element takes in the line break every Document has after its text
+        lengths[n - 1] -= root.getEndOffset() - doc.getLength();
+
+        var index = new LineIndex();
+        index.replace(0, 0, 1, lengths);
+        index.length = doc.getLength();
+        return index;
+    }
+
+    public int getLineCount() {
+        return lines;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The line offset is in, the last line for the end of the text
+     */
+    public int lineOf(int offset) {
+        if (offset < 0 || offset > length) throw new IndexOutOfBoundsException("Invalid offset: " + offset);
+        int b = find(charTree, offset);
+        if (b == count) return lines - 1;
+
+        int line = prefix(lineTree, b);
+        int start = prefix(charTree, b);
+        int[] bucket = buckets[b];
+        int i = 0;
+        while (start + bucket[i] <= offset) start += bucket[i++];
+        return line + i;
+    }
+
+    /**
+     * @return The offset line starts at
+     */
+    public int lineStart(int line) {
+        if (line < 0 || line >= lines) throw new IndexOutOfBoundsException("Invalid line: " + line);
+        int b = find(lineTree, line);
+        int start = prefix(charTree, b);
+        int[] bucket = buckets[b];
+        for (int i = 0, n = line - prefix(lineTree, b); i < n; i++) start += bucket[i];
+        return start;
+    }
+
+    /**
+     * Takes in text inserted at offset.
+     */
+    public void inserted(int offset, CharSequence text) {
+        int n = text.length();
+        if (n == 0) return;
+
+        int breaks = 0;
+        for (int i = 0; i < n; i++) if (text.charAt(i) == '\n') breaks++;
+
+        int line = lineOf(offset);
+        int b = find(lineTree, line);
+        int i = line - prefix(lineTree, b);
+        if (breaks == 0) {
+            // Within one line, which only changes one length
+            buckets[b][i] += n;
+            totals[b] += n;
+            length += n;
+            add(charTree, b, n);
+            return;
+        }
+
+        // The line is split around the text, whose own lines go in between
+        int column = offset - lineStart(line);
+        int[] added = new int[breaks + 1];
+        int k = 0;
+        int from = 0;
+        for (int j = 0; j < n; j++) {
+            if (text.charAt(j) == '\n') {
+                added[k++] = j + 1 - from;
+                from = j + 1;
+            }
+        }
+        added[0] += column;
+        added[breaks] = n - from + buckets[b][i] - column;
+        length += n;
+        replace(b, i, 1, added);
+    }
+
+    /**
+     * Takes in length chars removed from offset. Must be called before anything else
+     * is asked of the index, as it works out which lines went from what it had.
+     */
+    public void removed(int offset, int length) {
+        if (length == 0) return;
+        int first = lineOf(offset);
+        int last = lineOf(offset + length);
+        int b = find(lineTree, first);
+        int i = first - prefix(lineTree, b);
+        if (first == last) {
+            buckets[b][i] -= length;
+            totals[b] -= length;
+            this.length -= length;
+            add(charTree, b, -length);
+            return;
+        }
+
+        // What is left of the first and last lines joins into one
+        int joined = offset - lineStart(first) + lineStart(last) + lineLength(last) - offset - length;
+        this.length -= length;
+        replace(b, i, last - first + 1, new int[]{joined});
+    }
+
+    private int lineLength(int line) {
+        int b = find(lineTree, line);
+        return buckets[b][line - prefix(lineTree, b)];
+    }
+
+    // Replaces removed lines from line i of bucket b with lengths, then rebuilds the trees
+    private void replace(int b, int i, int removed, int[] lengths) {
+        // Everything from line i on is gathered up, as the removed lines can run on into later buckets
+        int tail = sizes[b] - i - removed;
+        int end = b + 1;
+        while (tail < 0) tail += sizes[end++];
+
+        // The lines kept from the start of bucket b, the new ones, then the ones kept after the removed ones
+        int[] all = new int[i + lengths.length + tail];
+        System.arraycopy(buckets[b], 0, all, 0, i);
+        System.arraycopy(lengths, 0, all, i, lengths.length);
+        System.arraycopy(buckets[end - 1], sizes[end - 1] - tail, all, i + lengths.length, tail);
+
+        // Which go back into one bucket if they fit, otherwise into buckets half full so the next inserts fit
+        int per = all.length <= BUCKET_SIZE ? BUCKET_SIZE : BUCKET_SIZE / 2;
+        int fresh = (all.length + per - 1) / per;
+        int[][] made = new int[fresh][];
+        int[] madeSizes = new int[fresh];
+        int[] madeTotals = new int[fresh];
+        for (int f = 0, at = 0; f < fresh; f++, at += per) {
+            made[f] = new int[BUCKET_SIZE];
+            madeSizes[f] = Math.min(per, all.length - at);
+            System.arraycopy(all, at, made[f], 0, madeSizes[f]);
+            for (int k = 0; k < madeSizes[f]; k++) madeTotals[f] += made[f][k];
+        }
+
+        int newCount = count - (end - b) + fresh;
+        var newBuckets = new int[newCount][];
+        var newSizes = new int[newCount];
+        var newTotals = new int[newCount];
+        System.arraycopy(buckets, 0, newBuckets, 0, b);
+        System.arraycopy(sizes, 0, newSizes, 0, b);
+        System.arraycopy(totals, 0, newTotals, 0, b);
+        System.arraycopy(made, 0, newBuckets, b, fresh);
+        System.arraycopy(madeSizes, 0, newSizes, b, fresh);
+        System.arraycopy(madeTotals, 0, newTotals, b, fresh);
+        System.arraycopy(buckets, end, newBuckets, b + fresh, count - end);
+        System.arraycopy(sizes, end, newSizes, b + fresh, count - end);
+        System.arraycopy(totals, end, newTotals, b + fresh, count - end);
+        buckets = newBuckets;
+        sizes = newSizes;
+        totals = newTotals;
+        count = newCount;
+        lines += lengths.length - removed;
+        rebuild();
+    }
+
+    // Builds both trees from the bucket totals in O(buckets)
+    private void rebuild() {
+        charTree = new int[count + 1];
+        lineTree = new int[count + 1];
+        int parent;
+        for (int i = 1; i <= count; i++) {
+            charTree[i] += totals[i - 1];
+            lineTree[i] += sizes[i - 1];
+            parent = i + (i & -i);
+            if (parent <= count) {
+                charTree[parent] += charTree[i];
+                lineTree[parent] += lineTree[i];
+            }
+        }
+    }
+
+    private void add(int[] tree, int b, int delta) {
+        for (int i = b + 1; i < tree.length; i += i & -i) tree[i] += delta;
+    }
+
+    // Total of the buckets before b
+    private int prefix(int[] tree, int b) {
+        int sum = 0;
+        for (int i = b; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+
+    // First bucket whose total, with those before it, is more than value, or count if none is
+    private int find(int[] tree, int value) {
+        int b = 0;
+        for (int step = Integer.highestOneBit(count); step > 0; step >>= 1) {
+            if (b + step <= count && tree[b + step] <= value) {
+                b += step;
+                value -= tree[b];
+            }
+        }
+        return b;
+    }
+}
@@ -0,0 +1,43 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A Reader that decodes a file directly out of memory-mapped regions of it.
+ *
+ * The file is mapped a region at a time so files larger than 2 GB can be read.
+ * No bytes are copied into a Java buffer, the operating system pages the file in
+ * as it is decoded.
+ */
+public class MappedReader extends ChannelReader {
+    public static final int DEFAULT_REGION_SIZE = 1 << 26;
+
+    protected final FileChannel file;
+    protected final int         regionSize;
+
+    private long regionStart = 0;
+
+    public MappedReader(FileChannel file, Charset charset) {
+        this(file, charset, DEFAULT_REGION_SIZE);
+    }
+
+    public MappedReader(FileChannel file, Charset charset, int regionSize) {
+        super(file, charset, ByteBuffer.allocate(0), CharBuffer.allocate(DEFAULT_BUFFER_SIZE), null);
+        this.file = file;
+        this.regionSize = checkSize(regionSize);
+    }
+
+    @Override
+    protected boolean fill() throws IOException {
+        // Start the next region at the first byte not yet decoded
+        long position = regionStart + bytes.position();
+        long size = file.size();
+        if (position >= size) return false;
+
+        bytes = file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+        regionStart = position;
+        return true;
+    }
+}
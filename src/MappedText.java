@@ -0,0 +1,357 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * The text of a memory-mapped file, read without copying it into the heap.
+ *
+ * Opening the file makes one pass over it to build a sparse index: for every BLOCK_SIZE
+ * chars it remembers where in the file they start and how many line breaks came before.
+ * After that any range of the text can be found by decoding at most a block or two,
+ * and the only memory used is the index (a few bytes per block) and a few decoded blocks.
+ *
+ * Line breaks are presented as '\n' whatever the file uses, the same as DefaultEditorKit:
+ * "\r\n" becomes "\n" and a lone '\r' becomes '\n'. The first one seen is kept as
+ * getLineEnd() so it can be put back on save.
+ *
+ * The file must not be changed by anything else while it is mapped.
+ */
+public class MappedText implements PieceTableContent.Source {
+    public static final int BLOCK_SIZE = 1 << 13;
+
+    private static final long REGION_SIZE  = 1L << 30;
+    // Enough that any block starting in a region can be decoded without leaving it
+    private static final int  REGION_SLACK = 16 * BLOCK_SIZE;
+    private static final int  CACHED_BLOCKS = 8;
+
+    private final Charset            charset;
+    private final long               fileSize;
+    private final MappedByteBuffer[] regions;
+    private final int                length;
+    private final String             lineEnd;
+
+    // Per block: where it starts in the file, and the state needed to start decoding there
+    private final long[]    blockStart;
+    private final boolean[] blockSkipsLowSurrogate;
+    private final boolean[] blockAfterCR;
+    // Line breaks before each block, with one more entry for the total
+    private final int[]     newlinesBefore;
+
+    private final CharsetDecoder decoder;
+    private final int[]          cachedIndex  = new int[CACHED_BLOCKS];
+    private final char[][]       cachedChars  = new char[CACHED_BLOCKS][];
+    private final int[][]        cachedBreaks = new int[CACHED_BLOCKS][];
+    private       int            nextCache    = 0;
+
+    private MappedText(Charset charset, long fileSize, MappedByteBuffer[] regions, int length, String lineEnd,
+                       long[] blockStart, boolean[] blockSkipsLowSurrogate, boolean[] blockAfterCR,
+                       int[] newlinesBefore) {
+        this.charset = charset;
+        this.fileSize = fileSize;
+        this.regions = regions;
+        this.length = length;
+        this.lineEnd = lineEnd;
+        this.blockStart = blockStart;
+        this.blockSkipsLowSurrogate = blockSkipsLowSurrogate;
+        this.blockAfterCR = blockAfterCR;
+        this.newlinesBefore = newlinesBefore;
+        this.decoder = newDecoder(charset);
+        Arrays.fill(cachedIndex, -1);
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                      .onMalformedInput(CodingErrorAction.REPLACE)
+                      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Maps a file and builds its index. This reads the whole file once, so do it off the event thread.
+     *
+     * @param channel The file, it can be closed once this returns
+     * @param charset How the file is encoded
+     * @param progress Told how many bytes have been indexed so far, may be null
+     * @param cancelled Checked now and then, indexing stops if it returns true, may be null
+     *
+     * @return The text
+     *
+     * @throws IOException From mapping the file, or if it has too many chars for a Document
+     */
+    public static MappedText open(FileChannel channel, Charset charset, LongConsumer progress,
+                                  BooleanSupplier cancelled) throws IOException {
+        long size = channel.size();
+        var regions = new MappedByteBuffer[(int) Math.max(1, (size + REGION_SIZE - 1) / REGION_SIZE)];
+        for (int i = 0; i < regions.length; i++) {
+            long start = i * REGION_SIZE;
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                     Math.min(REGION_SIZE + REGION_SLACK, size - start));
+        }
+
+        var index = new Index();
+        var decoder = newDecoder(charset);
+        var raw = CharBuffer.allocate(BLOCK_SIZE);
+        var pair = CharBuffer.allocate(2);
+        long position = 0;
+        boolean last;
+        int r;
+        ByteBuffer in;
+        CoderResult result;
+
+        while (true) {
+            if (index.length == (long) index.blocks * BLOCK_SIZE) {
+                index.add(position, false);
+                if (cancelled != null && cancelled.getAsBoolean())
+                    throw new InterruptedIOException("Indexing cancelled.");
+                if (progress != null) progress.accept(position);
+            }
+
+            // The end of a file that fills its last region exactly is still in that region
+            r = (int) Math.min(position / REGION_SIZE, regions.length - 1);
+            last = r == regions.length - 1;
+            in = regions[r].duplicate();
+            in.position((int) (position - r * REGION_SIZE));
+
+            // Never decode past the next block boundary, so where it starts can be recorded
+            raw.clear().limit((int) ((long) index.blocks * BLOCK_SIZE - index.length));
+            result = decoder.decode(in, raw, last);
+
+            if (raw.position() == 0 && result.isOverflow()) {
+                // A surrogate pair straddles the boundary, the next block starts halfway through it
+                pair.clear();
+                decoder.decode(in, pair, last);
+                index.count(pair.flip());
+                index.add(position, true);
+                position = r * REGION_SIZE + in.position();
+                continue;
+            }
+            if (last && result.isUnderflow() && raw.hasRemaining()) {
+                // Out of input, anything left over becomes a replacement char
+                decoder.flush(raw);
+                index.count(raw.flip());
+                break;
+            }
+
+            index.count(raw.flip());
+            position = r * REGION_SIZE + in.position();
+            if (index.length > Integer.MAX_VALUE - 2)
+                throw new IOException("File has too many characters to edit: " + index.length);
+        }
+
+        // A block is only recorded if something is in it
+        if (index.blocks > 1 && index.length == (long) (index.blocks - 1) * BLOCK_SIZE) index.blocks--;
+        if (progress != null) progress.accept(size);
+
+        return new MappedText(charset, size, regions, (int) index.length, index.lineEnd(),
+                              Arrays.copyOf(index.starts, index.blocks), Arrays.copyOf(index.skips, index.blocks),
+                              Arrays.copyOf(index.afterCRs, index.blocks), index.newlineTotals());
+    }
+
+    // Collects the block index while the file is read through
+    private static class Index {
+        long[]    starts   = new long[1024];
+        boolean[] skips    = new boolean[1024];
+        boolean[] afterCRs = new boolean[1024];
+        int[]     newlines = new int[1024];
+        int       blocks   = 0;
+
+        long    length  = 0;
+        int     lines   = 0;
+        boolean afterCR = false;
+        String  lineEnd = null;
+
+        void add(long start, boolean skip) {
+            if (blocks == starts.length) {
+                starts = Arrays.copyOf(starts, blocks * 2);
+                skips = Arrays.copyOf(skips, blocks * 2);
+                afterCRs = Arrays.copyOf(afterCRs, blocks * 2);
+                newlines = Arrays.copyOf(newlines, blocks * 2);
+            }
+            starts[blocks] = start;
+            skips[blocks] = skip;
+            afterCRs[blocks] = afterCR;
+            // A skipped char was counted with the block before
+            newlines[blocks] = lines;
+            blocks++;
+        }
+
+        void count(CharBuffer raw) {
+            char c;
+            while (raw.hasRemaining()) {
+                c = raw.get();
+                if (afterCR) {
+                    afterCR = false;
+                    if (c == '\n') {
+                        // Already counted as the '\n' the '\r' became
+                        if (lineEnd == null) lineEnd = "\r\n";
+                        continue;
+                    }
+                    if (lineEnd == null) lineEnd = "\r";
+                }
+                if (c == '\r') {
+                    afterCR = true;
+                    lines++;
+                } else if (c == '\n') {
+                    if (lineEnd == null) lineEnd = "\n";
+                    lines++;
+                }
+                length++;
+            }
+        }
+
+        String lineEnd() {
+            return lineEnd == null && afterCR ? "\r" : lineEnd;
+        }
+
+        int[] newlineTotals() {
+            int[] totals = Arrays.copyOf(newlines, blocks + 1);
+            totals[blocks] = lines;
+            return totals;
+        }
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return The line break the file used, or null if it had none
+     */
+    public String getLineEnd() {
+        return lineEnd;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public synchronized void getChars(int start, int end, char[] dst, int dstBegin) {
+        int b, from, n;
+        char[] block;
+        while (start < end) {
+            b = start / BLOCK_SIZE;
+            block = block(b);
+            from = start - b * BLOCK_SIZE;
+            n = Math.min(end - start, block.length - from);
+            System.arraycopy(block, from, dst, dstBegin, n);
+            start += n;
+            dstBegin += n;
+        }
+    }
+
+    @Override
+    public synchronized int newlinesBefore(int offset) {
+        if (offset >= length) return newlinesBefore[newlinesBefore.length - 1];
+        int b = offset / BLOCK_SIZE;
+        int[] breaks = breaks(b);
+        int i = Arrays.binarySearch(breaks, offset - b * BLOCK_SIZE);
+        return newlinesBefore[b] + (i >= 0 ? i : -i - 1);
+    }
+
+    @Override
+    public synchronized int newlineAt(int k) {
+        // Last block with at most k line breaks before it
+        int low = 0;
+        int high = blockStart.length - 1;
+        int mid;
+        while (low < high) {
+            mid = (low + high + 1) >>> 1;
+            if (newlinesBefore[mid] <= k) low = mid;
+            else high = mid - 1;
+        }
+        return low * BLOCK_SIZE + breaks(low)[k - newlinesBefore[low]];
+    }
+
+    // Where the line breaks are in block b, must hold the lock
+    private int[] breaks(int b) {
+        return cachedBreaks[cache(b)];
+    }
+
+    // Decoded chars of block b, must hold the lock
+    private char[] block(int b) {
+        return cachedChars[cache(b)];
+    }
+
+    // Which cache slot holds block b, decoding it if none does
+    private int cache(int b) {
+        for (int i = 0; i < CACHED_BLOCKS; i++)
+            if (cachedIndex[i] == b) return i;
+
+        int slot = nextCache;
+        nextCache = (nextCache + 1) % CACHED_BLOCKS;
+
+        int size = (int) Math.min(BLOCK_SIZE, length - (long) b * BLOCK_SIZE);
+        char[] out = cachedChars[slot] != null && cachedChars[slot].length == size
+                     ? cachedChars[slot] : new char[size];
+        cachedIndex[slot] = -1;
+        decode(b, out);
+
+        int[] breaks = new int[newlinesBefore[b + 1] - newlinesBefore[b]];
+        for (int i = 0, n = 0; n < breaks.length; i++)
+            if (out[i] == '\n') breaks[n++] = i;
+
+        cachedIndex[slot] = b;
+        cachedChars[slot] = out;
+        cachedBreaks[slot] = breaks;
+        return slot;
+    }
+
+    private void decode(int b, char[] out) {
+        long start = blockStart[b];
+        int r = (int) (start / REGION_SIZE);
+        ByteBuffer in = regions[r].duplicate();
+        in.position((int) (start - r * REGION_SIZE));
+        boolean endOfInput = r == regions.length - 1;
+
+        var raw = CharBuffer.allocate(Math.max(16, out.length + 2));
+        char[] chars = raw.array();
+        boolean skip = blockSkipsLowSurrogate[b];
+        boolean afterCR = blockAfterCR[b];
+        boolean flushed = false;
+        int used = 0;
+        char c;
+
+        decoder.reset();
+        while (used < out.length && !flushed) {
+            raw.clear();
+            CoderResult result = decoder.decode(in, raw, endOfInput);
+            if (endOfInput && result.isUnderflow() && !in.hasRemaining()) {
+                decoder.flush(raw);
+                flushed = true;
+            }
+
+            for (int i = 0, n = raw.position(); i < n && used < out.length; i++) {
+                c = chars[i];
+                if (skip) {
+                    skip = false;
+                    continue;
+                }
+                if (afterCR) {
+                    afterCR = false;
+                    if (c == '\n') continue;
+                }
+                if (c == '\r') {
+                    afterCR = true;
+                    c = '\n';
+                }
+                out[used++] = c;
+            }
+        }
+        if (used < out.length) throw new IllegalStateException("File changed while mapped.");
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A Writer that encodes directly into memory-mapped regions of a file.
+ *
+ * The file is mapped a region at a time as it grows, and is cut back to the length
+ * actually written when the writer is closed. flush() forces the current region out
+ * to the storage device.
+ *
+ * Some platforms (Windows) will not let a file shrink while parts of it are still
+ * mapped, so there the file may keep some trailing zero bytes.
+ */
+public class MappedWriter extends ChannelWriter {
+    public static final int DEFAULT_REGION_SIZE = 1 << 24;
+
+    protected final FileChannel file;
+    protected final int         regionSize;
+
+    private long regionStart = 0;
+
+    public MappedWriter(FileChannel file, Charset charset) throws IOException {
+        this(file, charset, DEFAULT_REGION_SIZE);
+    }
+
+    public MappedWriter(FileChannel file, Charset charset, int regionSize) throws IOException {
+        super(file, charset, file.map(FileChannel.MapMode.READ_WRITE, 0, ChannelReader.checkSize(regionSize)),
+              CharBuffer.allocate(DEFAULT_BUFFER_SIZE), null);
+        this.file = file;
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        super.flush();
+        ((MappedByteBuffer) bytes).force();
+    }
+
+    @Override
+    protected void drain() {
+        // Everything encoded is already in the file
+    }
+
+    @Override
+    protected void makeRoom() throws IOException {
+        // Move on to the next region, the rest of this one is cut off by finish()
+        regionStart += bytes.position();
+        bytes = file.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        file.truncate(regionStart + bytes.position());
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+/**
+ * An OutputStream that compresses blocks of its input on several threads at once,
+ * the way pigz does, and writes a single ordinary gzip or zlib stream.
+ *
+ * The input is cut into blocks which are each compressed on their own, using the end of
+ * the block before as a dictionary so very little compression is lost. All but the last
+ * block end on a byte boundary (a sync flush) so the pieces can just be written one after
+ * the other. Anything that reads gzip (GZIPInputStream, gunzip) can read the result.
+ *
+ * Blocks are compressed on an ExecutorService, by default a pool shared by every stream
+ * with one thread per processor. Only a few blocks are kept waiting at once, so memory
+ * use stays bounded however much is written.
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 17;
+    public static final int DICTIONARY_SIZE    = 1 << 15;
+
+    public enum Format {GZIP, ZLIB}
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9c};
+
+    private final OutputStream    out;
+    private final Format          format;
+    private final int             level;
+    private final int             blockSize;
+    private final ExecutorService executor;
+    private final int             maxPending;
+    private final Checksum        checksum;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[]  block;
+    private int     blockUsed = 0;
+    private byte[]  previous  = null;
+    private int     previousUsed = 0;
+    private long    size      = 0;
+    private boolean closed    = false;
+
+    public ParallelDeflaterOutputStream(OutputStream out, Format format) throws IOException {
+        this(out, format, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE, SharedPool.EXECUTOR,
+             2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param out Where to write the compressed stream
+     * @param format Whether to write gzip or zlib framing
+     * @param level The Deflater compression level
+     * @param blockSize How many bytes of input to compress as one piece
+     * @param executor What to compress the blocks on
+     * @param maxPending How many blocks may be waiting to be written before writes wait
+     *
+     * @throws IOException From writing the header
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, Format format, int level, int blockSize,
+                                        ExecutorService executor, int maxPending) throws IOException {
+        if (blockSize < DICTIONARY_SIZE) throw new IllegalArgumentException("Block size too small: " + blockSize);
+        if (maxPending <= 0) throw new IllegalArgumentException("Must allow at least one pending block.");
+
+        this.out = out;
+        this.format = format;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.executor = executor;
+        this.maxPending = maxPending;
+        this.checksum = format == Format.GZIP ? new CRC32() : new Adler32();
+        this.block = new byte[blockSize];
+
+        out.write(format == Format.GZIP ? GZIP_HEADER : ZLIB_HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (blockUsed == blockSize) submit(false);
+        block[blockUsed++] = (byte) b;
+        checksum.update(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+
+        checksum.update(b, off, len);
+        size += len;
+
+        int n;
+        while (len > 0) {
+            if (blockUsed == blockSize) submit(false);
+            n = Math.min(len, blockSize - blockUsed);
+            System.arraycopy(b, off, block, blockUsed, n);
+            blockUsed += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compresses what has been written so far and writes it all out.
+     * Flushing often makes the compression worse, as every flush ends a block.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (blockUsed > 0) submit(false);
+        while (!pending.isEmpty()) writeNext();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            submit(true);
+            while (!pending.isEmpty()) writeNext();
+            writeTrailer();
+            out.flush();
+        } finally {
+            closed = true;
+            for (var f : pending) f.cancel(false);
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        final byte[] data = block;
+        final int length = blockUsed;
+        final byte[] dictionary = previous;
+        final int dictionaryLength = previousUsed;
+
+        pending.addLast(executor.submit(() -> compress(data, length, dictionary, dictionaryLength, last)));
+
+        previous = data;
+        previousUsed = length;
+        // The block just submitted is still being read, so it can't be reused
+        block = new byte[blockSize];
+        blockUsed = 0;
+
+        while (pending.size() > maxPending) writeNext();
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block to compress.");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress block.", e.getCause());
+        }
+    }
+
+    private byte[] compress(byte[] data, int length, byte[] dictionary, int dictionaryLength, boolean last) {
+        var deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                int n = Math.min(DICTIONARY_SIZE, dictionaryLength);
+                deflater.setDictionary(dictionary, dictionaryLength - n, n);
+            }
+            deflater.setInput(data, 0, length);
+            if (last) deflater.finish();
+
+            byte[] buffer = new byte[length + (length >> 3) + 64];
+            int used = 0;
+            while (true) {
+                used += deflater.deflate(buffer, used, buffer.length - used,
+                                         last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                // A full buffer means there may be more to come
+                if (last ? deflater.finished() : used < buffer.length) break;
+                if (used == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            return Arrays.copyOf(buffer, used);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeTrailer() throws IOException {
+        long sum = checksum.getValue();
+        if (format == Format.GZIP) {
+            writeIntLE(sum);
+            writeIntLE(size);
+        } else {
+            out.write((int) (sum >>> 24));
+            out.write((int) (sum >>> 16));
+            out.write((int) (sum >>> 8));
+            out.write((int) sum);
+        }
+    }
+
+    private void writeIntLE(long value) throws IOException {
+        out.write((int) value);
+        out.write((int) (value >>> 8));
+        out.write((int) (value >>> 16));
+        out.write((int) (value >>> 24));
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed.");
+    }
+
+    // Only created if a stream is made without an executor
+    private static class SharedPool {
+        static final ExecutorService EXECUTOR =
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                    var t = new Thread(r, "parallel-deflater");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+}
@@ -0,0 +1,489 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Document content kept as a piece table, for text far too big for a GapContent.
+ *
+ * The text starts out as one piece covering the original (usually a MappedText, so it
+ * stays on disk). Inserted text is appended to an add buffer that only ever grows, and
+ * the document is a sequence of pieces, each a range of one of the two. Inserting or
+ * removing just splits and rejoins pieces, nothing is ever moved, so edits anywhere cost
+ * O(log n) in the number of pieces however big the text is.
+ *
+ * The pieces are kept in a treap ordered by position, where each node also knows how
+ * many chars and line breaks are under it. That finds the piece at an offset, and the
+ * start of any line, in O(log n) too, which is what PieceTableDocument builds its lines on.
+ *
+ * Like the other Content implementations this is not locked, AbstractDocument does that.
+ * No undo information is kept, insertString and remove return null.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+    public static final int ADD_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Read-only text pieces can be taken from.
+     */
+    public interface Source {
+        int length();
+
+        /**
+         * Copies chars start to end into dst, like String.getChars.
+         */
+        void getChars(int start, int end, char[] dst, int dstBegin);
+
+        /**
+         * @return How many '\n' there are before offset
+         */
+        int newlinesBefore(int offset);
+
+        /**
+         * @return Where the k-th '\n' is, counting from 0
+         */
+        int newlineAt(int k);
+    }
+
+    private final Source    original;
+    private final AddBuffer added = new AddBuffer();
+
+    private Node root = null;
+    private int  seed = 0x2545F491;
+
+    // Ordered by offset, so an edit only has to look at the marks after it
+    private final List<MarkRef> marks   = new ArrayList<>();
+    private int                 purgeAt = 64;
+
+    /**
+     * Starts out holding just the implied '\n' every Content ends with.
+     */
+    public PieceTableContent() {
+        this(null);
+    }
+
+    /**
+     * @param original The text to start with, may be null
+     */
+    public PieceTableContent(Source original) {
+        this.original = original;
+        if (original != null && original.length() > 0) root = newNode(original, 0, original.length());
+        added.append("\n");
+        root = merge(root, newNode(added, 0, 1));
+    }
+
+    public Source getOriginal() {
+        return original;
+    }
+
+    @Override
+    public int length() {
+        return root.size;
+    }
+
+    /**
+     * @return How many lines there are, every line ends with a '\n'
+     */
+    public int lineCount() {
+        return root.lines;
+    }
+
+    /**
+     * @return The offset line starts at, or length() if line == lineCount()
+     */
+    public int lineStart(int line) {
+        return line == 0 ? 0 : newlineOffset(line - 1) + 1;
+    }
+
+    /**
+     * @return The line offset is on
+     */
+    public int lineOf(int offset) {
+        return Math.min(newlinesBefore(Math.max(0, offset)), root.lines - 1);
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        if (offset < 0 || offset > length()) throw new BadLocationException("Invalid position", offset);
+        if (marks.size() >= purgeAt) {
+            // Drop the marks nothing uses any more, only once there are twice as many as last time
+            marks.removeIf(ref -> ref.get() == null);
+            purgeAt = Math.max(64, marks.size() * 2);
+        }
+
+        var mark = new Mark();
+        mark.ref = new MarkRef(mark, offset);
+        marks.add(firstMarkAt(offset + 1), mark.ref);
+        return mark;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where >= length()) throw new BadLocationException("Invalid insert", where);
+        if (str.isEmpty()) return null;
+
+        int start = added.length();
+        added.append(str);
+
+        Node[] parts = split(root, where);
+        Node before = parts[0];
+        Node last = before == null ? null : rightmost(before);
+        if (last != null && last.source == added && last.start + last.length == start) {
+            // Typing: just make the piece before longer
+            Node[] lastParts = split(before, before.size - last.length);
+            before = merge(lastParts[0], newNode(added, last.start, last.length + str.length()));
+        } else {
+            before = merge(before, newNode(added, start, str.length()));
+        }
+        root = merge(before, parts[1]);
+
+        updateMarksForInsert(where, str.length());
+        return null;
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length())
+            throw new BadLocationException("Invalid remove", where + nitems);
+        if (nitems == 0) return null;
+
+        Node[] parts = split(root, where);
+        Node[] rest = split(parts[1], nitems);
+        root = merge(parts[0], rest[1]);
+
+        updateMarksForRemove(where, nitems);
+        return null;
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        char[] out = new char[len];
+        copy(where, len, out);
+        return new String(out);
+    }
+
+    /**
+     * If txt allows a partial return, this may only give the first part of the range,
+     * straight out of the add buffer when it can. Otherwise the range is copied.
+     */
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        if (txt.isPartialReturn() && len > 0) {
+            Node node = root;
+            int offset = where;
+            int leftSize;
+            while (true) {
+                leftSize = node.left == null ? 0 : node.left.size;
+                if (offset < leftSize) {
+                    node = node.left;
+                } else if (offset < leftSize + node.length) {
+                    break;
+                } else {
+                    offset -= leftSize + node.length;
+                    node = node.right;
+                }
+            }
+            int from = node.start + offset - leftSize;
+            int n = Math.min(len, node.length - (offset - leftSize));
+            if (node.source == added && added.isContiguous(from, n)) {
+                added.point(from, n, txt);
+                return;
+            }
+            len = n;
+        }
+        txt.array = new char[len];
+        txt.offset = 0;
+        txt.count = len;
+        copy(where, len, txt.array);
+    }
+
+    private void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length())
+            throw new BadLocationException("Invalid range", where + len);
+    }
+
+    // How many '\n' come before offset
+    private int newlinesBefore(int offset) {
+        int count = 0;
+        Node node = root;
+        int leftSize;
+        while (node != null) {
+            leftSize = node.left == null ? 0 : node.left.size;
+            if (offset < leftSize) {
+                node = node.left;
+            } else if (offset < leftSize + node.length) {
+                count += node.left == null ? 0 : node.left.lines;
+                return count + node.source.newlinesBefore(node.start + offset - leftSize) - node.before;
+            } else {
+                count += (node.left == null ? 0 : node.left.lines) + node.newlines;
+                offset -= leftSize + node.length;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    // Where the k-th '\n' is, counting from 0
+    private int newlineOffset(int k) {
+        if (k >= root.lines) return length();
+        int offset = 0;
+        Node node = root;
+        int leftLines;
+        while (true) {
+            leftLines = node.left == null ? 0 : node.left.lines;
+            if (k < leftLines) {
+                node = node.left;
+            } else if (k < leftLines + node.newlines) {
+                offset += node.left == null ? 0 : node.left.size;
+                return offset + node.source.newlineAt(node.before + k - leftLines) - node.start;
+            } else {
+                k -= leftLines + node.newlines;
+                offset += (node.left == null ? 0 : node.left.size) + node.length;
+                node = node.right;
+            }
+        }
+    }
+
+    private void copy(int where, int len, char[] out) {
+        copy(root, where, len, out, 0);
+    }
+
+    private static void copy(Node node, int where, int len, char[] out, int at) {
+        int leftSize, from, n;
+        while (node != null && len > 0) {
+            leftSize = node.left == null ? 0 : node.left.size;
+            if (where < leftSize) {
+                n = Math.min(len, leftSize - where);
+                copy(node.left, where, n, out, at);
+                where += n;
+                at += n;
+                len -= n;
+            }
+            if (len > 0 && where < leftSize + node.length) {
+                from = where - leftSize;
+                n = Math.min(len, node.length - from);
+                node.source.getChars(node.start + from, node.start + from + n, out, at);
+                where += n;
+                at += n;
+                len -= n;
+            }
+            where -= leftSize + node.length;
+            node = node.right;
+        }
+    }
+
+    // Same rules as StringContent: a mark at 0 stays there, others at or after where move along
+    private void updateMarksForInsert(int where, int length) {
+        if (where == 0) where = 1;
+        for (int i = firstMarkAt(where); i < marks.size(); i++) marks.get(i).offset += length;
+    }
+
+    // Marks in the removed text all end up at where, so the order is kept
+    private void updateMarksForRemove(int where, int length) {
+        MarkRef ref;
+        for (int i = firstMarkAt(where); i < marks.size(); i++) {
+            ref = marks.get(i);
+            ref.offset = ref.offset >= where + length ? ref.offset - length : where;
+        }
+    }
+
+    // The index of the first mark at or after offset
+    private int firstMarkAt(int offset) {
+        int low = 0;
+        int high = marks.size();
+        int mid;
+        while (low < high) {
+            mid = (low + high) >>> 1;
+            if (marks.get(mid).offset < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private Node newNode(Source source, int start, int length) {
+        // xorshift, only has to look random enough to keep the treap balanced
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return new Node(source, start, length, seed);
+    }
+
+    private static Node rightmost(Node node) {
+        while (node.right != null) node = node.right;
+        return node;
+    }
+
+    private Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return a.update();
+        }
+        b.left = merge(a, b.left);
+        return b.update();
+    }
+
+    // Splits into the first offset chars and the rest, cutting a piece in two if it has to
+    private Node[] split(Node node, int offset) {
+        if (node == null) return new Node[]{null, null};
+
+        int leftSize = node.left == null ? 0 : node.left.size;
+        Node[] parts;
+        if (offset <= leftSize) {
+            parts = split(node.left, offset);
+            node.left = parts[1];
+            parts[1] = node.update();
+            return parts;
+        }
+        if (offset >= leftSize + node.length) {
+            parts = split(node.right, offset - leftSize - node.length);
+            node.right = parts[0];
+            parts[0] = node.update();
+            return parts;
+        }
+
+        int cut = offset - leftSize;
+        Node head = newNode(node.source, node.start, cut);
+        Node tail = newNode(node.source, node.start + cut, node.length - cut);
+        return new Node[]{merge(node.left, head), merge(tail, node.right)};
+    }
+
+    private static class Node {
+        final Source source;
+        final int    start;
+        final int    length;
+        // Line breaks in source before start, and inside this piece
+        final int    before;
+        final int    newlines;
+        final int    priority;
+
+        Node left  = null;
+        Node right = null;
+        // Totals for the subtree
+        int  size;
+        int  lines;
+
+        Node(Source source, int start, int length, int priority) {
+            this.source = source;
+            this.start = start;
+            this.length = length;
+            this.before = source.newlinesBefore(start);
+            this.newlines = source.newlinesBefore(start + length) - before;
+            this.priority = priority;
+            this.size = length;
+            this.lines = newlines;
+        }
+
+        Node update() {
+            size = length;
+            lines = newlines;
+            if (left != null) {
+                size += left.size;
+                lines += left.lines;
+            }
+            if (right != null) {
+                size += right.size;
+                lines += right.lines;
+            }
+            return this;
+        }
+    }
+
+    private static class Mark implements Position {
+        MarkRef ref;
+
+        @Override
+        public int getOffset() {
+            return ref.offset;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(ref.offset);
+        }
+    }
+
+    // Keeps the offset, so the list stays ordered even after the mark itself is collected
+    private static class MarkRef extends WeakReference<Mark> {
+        int offset;
+
+        MarkRef(Mark mark, int offset) {
+            super(mark);
+            this.offset = offset;
+        }
+    }
+
+    // Everything ever inserted, one chunk after another
+    private static class AddBuffer implements Source {
+        private char[][] chunks    = new char[8][];
+        private int      length    = 0;
+        private int[]    newlines  = new int[64];
+        private int      lineCount = 0;
+
+        void append(String str) {
+            int c, from, n;
+            for (int i = 0, size = str.length(); i < size; ) {
+                c = length / ADD_CHUNK_SIZE;
+                if (c == chunks.length) chunks = Arrays.copyOf(chunks, c * 2);
+                if (chunks[c] == null) chunks[c] = new char[ADD_CHUNK_SIZE];
+                from = length - c * ADD_CHUNK_SIZE;
+                n = Math.min(size - i, ADD_CHUNK_SIZE - from);
+                str.getChars(i, i + n, chunks[c], from);
+                for (int j = 0; j < n; j++) {
+                    if (chunks[c][from + j] != '\n') continue;
+                    if (lineCount == newlines.length) newlines = Arrays.copyOf(newlines, lineCount * 2);
+                    newlines[lineCount++] = length + j;
+                }
+                length += n;
+                i += n;
+            }
+        }
+
+        boolean isContiguous(int start, int length) {
+            return start / ADD_CHUNK_SIZE == (start + length - 1) / ADD_CHUNK_SIZE;
+        }
+
+        void point(int start, int length, Segment txt) {
+            txt.array = chunks[start / ADD_CHUNK_SIZE];
+            txt.offset = start % ADD_CHUNK_SIZE;
+            txt.count = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public void getChars(int start, int end, char[] dst, int dstBegin) {
+            int c, from, n;
+            while (start < end) {
+                c = start / ADD_CHUNK_SIZE;
+                from = start - c * ADD_CHUNK_SIZE;
+                n = Math.min(end - start, ADD_CHUNK_SIZE - from);
+                System.arraycopy(chunks[c], from, dst, dstBegin, n);
+                start += n;
+                dstBegin += n;
+            }
+        }
+
+        @Override
+        public int newlinesBefore(int offset) {
+            int i = Arrays.binarySearch(newlines, 0, lineCount, offset);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        @Override
+        public int newlineAt(int k) {
+            return newlines[k];
+        }
+    }
+}
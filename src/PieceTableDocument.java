@@ -0,0 +1,266 @@
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+
+/**
+ * A plain text Document over a PieceTableContent, for files too big for PlainDocument.
+ *
+ * PlainDocument keeps an Element for every line, each holding two Positions, which for a
+ * file with tens of millions of lines is more memory than the text. Here lines are not
+ * stored at all: the root element works out where line i is from the content's line
+ * index whenever it is asked, and hands back a small Element naming that line.
+ *
+ * That means line Elements are only meaningful until the next edit, so views have to look
+ * lines up again rather than hold on to them. PlainView and VirtualTextView do,
+ * WrappedPlainView does not.
+ *
+ * Bidirectional layout is never turned on. It breaks each line using the text of the
+ * whole root element, which for this document means copying the whole file for every line.
+ */
+@SuppressWarnings("serial") // Its content isn't Serializable, so neither is it
+public class PieceTableDocument extends AbstractDocument {
+    // AbstractDocument.I18NProperty, which isn't visible here
+    private static final String I18N_PROPERTY = "i18n";
+
+    private final PieceTableContent content;
+    private final LineRoot          root;
+
+    public PieceTableDocument() {
+        this(new PieceTableContent());
+    }
+
+    public PieceTableDocument(PieceTableContent content) {
+        super(content);
+        this.content = content;
+        this.root = new LineRoot();
+        putProperty(PlainDocument.tabSizeAttribute, 8);
+        putProperty(I18N_PROPERTY, Boolean.FALSE);
+    }
+
+    public PieceTableContent getPieceTable() {
+        return content;
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    @Override
+    public Element getParagraphElement(int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    /**
+     * Replaces many ranges of the text as one edit, under one write lock.
+     *
+     * The ranges are replaced one by one from the last to the first, so the offsets of the
+     * ones before are still right, and listeners hear about each. No other thread can read
+     * the text until all of them are done. Only the new text goes into the piece table, the
+     * text between the ranges is never copied.
+     *
+     * @param offsets Where each range starts, in order and not overlapping
+     * @param lengths How many chars each range has
+     * @param texts What goes in place of each range
+     *
+     * @throws BadLocationException If a range isn't in the text. The ranges after it stay replaced.
+     */
+    public void replace(int[] offsets, int[] lengths, String[] texts) throws BadLocationException {
+        if (offsets.length != lengths.length || offsets.length != texts.length) {
+            throw new IllegalArgumentException("Need an offset, a length and a text for each range.");
+        }
+        // The write lock can be taken again by the thread holding it, as each replace does
+        writeLock();
+        try {
+            for (int i = offsets.length - 1; i >= 0; i--) replace(offsets[i], lengths[i], texts[i], null);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    // Runs after the text is inserted
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        // Set by insertString when the text needs it, undone before anything acts on it
+        putProperty(I18N_PROPERTY, Boolean.FALSE);
+
+        int offset = chng.getOffset();
+        int line = content.lineOf(offset);
+        int added = content.lineOf(offset + chng.getLength()) - line;
+        if (added > 0) {
+            var newLines = new Element[added + 1];
+            for (int i = 0; i <= added; i++) newLines[i] = new LineElement(line + i);
+            chng.addEdit(new LineChange(line, new Element[]{new LineElement(line)}, newLines));
+        }
+        super.insertUpdate(chng, attr);
+    }
+
+    // Runs before the text is removed
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        int offset = chng.getOffset();
+        int line = content.lineOf(offset);
+        int removed = content.lineOf(offset + chng.getLength()) - line;
+        if (removed > 0) {
+            var oldLines = new Element[removed + 1];
+            for (int i = 0; i <= removed; i++) oldLines[i] = new LineElement(line + i);
+            chng.addEdit(new LineChange(line, oldLines, new Element[]{new LineElement(line)}));
+        }
+        super.removeUpdate(chng);
+    }
+
+    private class LineRoot implements Element {
+        @Override
+        public Document getDocument() {
+            return PieceTableDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return ParagraphElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return content.length();
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return content.lineOf(offset);
+        }
+
+        @Override
+        public int getElementCount() {
+            return content.lineCount();
+        }
+
+        @Override
+        public Element getElement(int index) {
+            return index >= 0 && index < content.lineCount() ? new LineElement(index) : null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+    }
+
+    private class LineElement implements Element {
+        private final int line;
+
+        LineElement(int line) {
+            this.line = line;
+        }
+
+        @Override
+        public Document getDocument() {
+            return PieceTableDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return root;
+        }
+
+        @Override
+        public String getName() {
+            return ContentElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return content.lineStart(line);
+        }
+
+        @Override
+        public int getEndOffset() {
+            return content.lineStart(line + 1);
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line;
+        }
+    }
+
+    // Tells views which lines changed, there is nothing to undo as lines aren't stored
+    @SuppressWarnings("serial")
+    private class LineChange extends AbstractUndoableEdit implements DocumentEvent.ElementChange {
+        private final int       index;
+        private final Element[] removed;
+        private final Element[] added;
+
+        LineChange(int index, Element[] removed, Element[] added) {
+            this.index = index;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        @Override
+        public Element getElement() {
+            return root;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Element[] getChildrenRemoved() {
+            return removed;
+        }
+
+        @Override
+        public Element[] getChildrenAdded() {
+            return added;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An InputStream that reads ahead of its caller on a background thread.
+ *
+ * A background thread keeps reading from the wrapped stream into a few chunks while the
+ * caller works through the ones already read. When the wrapped stream does real work,
+ * such as a GZIPInputStream decompressing, that work happens while the caller is busy
+ * with the previous chunk instead of while it waits.
+ *
+ * Like most streams, this is meant to be read by one thread at a time.
+ */
+public class ReadAheadInputStream extends InputStream {
+    public static final int DEFAULT_CHUNK_SIZE  = 1 << 16;
+    public static final int DEFAULT_CHUNK_COUNT = 4;
+    // How long close() waits for the reader to stop before closing the stream under it, in milliseconds
+    public static final int CLOSE_WAIT          = 100;
+
+    private final InputStream in;
+
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> ready;
+    private final Thread               reader;
+
+    private Chunk current = null;
+
+    private volatile boolean closed = false;
+
+    public ReadAheadInputStream(InputStream in) {
+        this(in, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+    }
+
+    public ReadAheadInputStream(InputStream in, int chunkSize, int chunkCount) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        if (chunkCount < 2) throw new IllegalArgumentException("Need at least two chunks: " + chunkCount);
+
+        this.in = in;
+        free = new ArrayBlockingQueue<>(chunkCount);
+        ready = new ArrayBlockingQueue<>(chunkCount + 1);
+        for (int i = 0; i < chunkCount; i++) free.add(new Chunk(chunkSize));
+
+        reader = new Thread(this::readAhead, "read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) return -1;
+        return current.data[current.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (!nextChunk()) return -1;
+
+        int n = Math.min(len, current.length - current.position);
+        System.arraycopy(current.data, current.position, b, off, n);
+        current.position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed) throw new IOException("Stream closed.");
+        return current != null && current.length > 0 ? current.length - current.position : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        reader.interrupt();
+
+        // A reader between reads stops as soon as it sees closed, and closing a GZIPInputStream
+        // under it would only make it fail. One blocked in a read of stdin, a pipe or a socket
+        // doesn't notice the interrupt, so it is only given a moment before closing makes the
+        // read fail instead. Anything the reader throws then goes nowhere, as this is closed.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_WAIT);
+        long left;
+        boolean interrupted = false;
+        while (reader.isAlive() && (left = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(reader, left);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        in.close();
+    }
+
+    // Makes sure current has something left to read, returns false at the end of the input
+    private boolean nextChunk() throws IOException {
+        if (closed) throw new IOException("Stream closed.");
+
+        try {
+            if (current != null) {
+                if (current.error != null) throw new IOException("Read ahead failed.", current.error);
+                if (current.position < current.length) return true;
+                if (current.length < 0) return false;
+                free.put(current);
+            }
+            current = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for input.");
+        }
+
+        if (current.error != null) throw new IOException("Read ahead failed.", current.error);
+        return current.length > 0;
+    }
+
+    // Runs on the background thread
+    private void readAhead() {
+        Chunk chunk;
+        Exception error;
+        int n;
+        try {
+            while (!closed) {
+                chunk = free.take();
+                chunk.position = 0;
+                chunk.length = 0;
+                error = null;
+                try {
+                    // Fill the whole chunk so the caller wakes up less often
+                    while (!closed && chunk.length < chunk.data.length
+                           && (n = in.read(chunk.data, chunk.length, chunk.data.length - chunk.length)) >= 0) {
+                        chunk.length += n;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                }
+
+                if (chunk.length > 0) {
+                    ready.put(chunk);
+                    if (error == null) continue;
+
+                    // The caller gets what was read before the error, then the error
+                    chunk = free.take();
+                    chunk.position = 0;
+                    chunk.length = 0;
+                }
+
+                // End of input or an error, either way the caller sees it next
+                chunk.error = error;
+                if (error == null) chunk.length = -1;
+                ready.put(chunk);
+                return;
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private static class Chunk {
+        final byte[] data;
+        int         position;
+        int         length;
+        Exception   error;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A ChannelReader that reads from an InputStream, straight into the array behind its
+ * byte buffer.
+ *
+ * Wrapping the stream with Channels.newChannel would copy everything through a buffer
+ * of the channel's own, allocated for every stream, which would undo borrowing the
+ * buffers from a pool. Like a BufferedReader, it is ready() if anything is buffered or
+ * the stream has bytes available.
+ */
+public class StreamReader extends ChannelReader {
+    protected final InputStream in;
+
+    public StreamReader(InputStream in, Charset charset) {
+        this(in, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamReader(InputStream in, Charset charset, int bufferSize) {
+        super(null, charset, bufferSize, false);
+        this.in = in;
+    }
+
+    /**
+     * Borrows its buffers from pool and gives them back when closed.
+     */
+    public StreamReader(InputStream in, Charset charset, int bufferSize, BufferPool pool) {
+        super(null, charset, bufferSize, false, pool);
+        this.in = in;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return super.ready() || in.available() > 0;
+    }
+
+    @Override
+    protected boolean fill() throws IOException {
+        bytes.compact();
+        int n;
+        try {
+            n = in.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            if (n > 0) bytes.position(bytes.position() + n);
+        } finally {
+            bytes.flip();
+        }
+        return n >= 0;
+    }
+
+    @Override
+    protected void closeChannel() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A ChannelWriter that writes to an OutputStream, straight from the array behind its
+ * byte buffer.
+ *
+ * Wrapping the stream with Channels.newChannel would copy everything through a buffer
+ * of the channel's own, allocated for every stream, which would undo borrowing the
+ * buffers from a pool. flush() flushes the stream too, so anything buffering below it,
+ * like a BufferedOutputStream, GZIPOutputStream or socket, is pushed on as well.
+ */
+public class StreamWriter extends ChannelWriter {
+    protected final OutputStream out;
+
+    public StreamWriter(OutputStream out, Charset charset) {
+        this(out, charset, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StreamWriter(OutputStream out, Charset charset, int bufferSize) {
+        super(null, charset, bufferSize, false);
+        this.out = out;
+    }
+
+    /**
+     * Borrows its buffers from pool and gives them back when closed.
+     */
+    public StreamWriter(OutputStream out, Charset charset, int bufferSize, BufferPool pool) {
+        super(null, charset, bufferSize, false, pool);
+        this.out = out;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        super.flush();
+        out.flush();
+    }
+
+    @Override
+    protected void drain() throws IOException {
+        bytes.flip();
+        try {
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        } finally {
+            bytes.clear();
+        }
+    }
+
+    @Override
+    protected void closeChannel() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A Writer that collects text in memory, for use by a single thread.
+ *
+ * StringWriter keeps its text in a StringBuffer, which locks on every write and copies
+ * everything into a bigger array each time it fills up. This instead keeps a list of
+ * chunks, and just adds another chunk when the last one is full, so nothing written is
+ * ever copied until you ask for it.
+ *
+ * The text can be read back as a String, as a CharSequence (this object itself) or
+ * encoded into a ByteBuffer. Nothing here is synchronized, so only use it from one
+ * thread at a time.
+ */
+public class StringSink extends Writer implements CharSequence {
+    public static final int FIRST_CHUNK_SIZE = 1 << 8;
+    public static final int MAX_CHUNK_SIZE   = 1 << 20;
+
+    private char[][] chunks = new char[8][];
+    private int[]    starts = new int[8];
+    private int      chunkCount = 0;
+
+    private char[] tail     = null;
+    private int    tailUsed = 0;
+    private int    length   = 0;
+
+    public StringSink() {
+        super();
+    }
+
+    @Override
+    public void write(int c) {
+        if (tail == null || tailUsed == tail.length) addChunk();
+        tail[tailUsed++] = (char) c;
+        length++;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        int n;
+        while (len > 0) {
+            if (tail == null || tailUsed == tail.length) addChunk();
+            n = Math.min(len, tail.length - tailUsed);
+            System.arraycopy(cbuf, off, tail, tailUsed, n);
+            tailUsed += n;
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        Objects.checkFromIndexSize(off, len, str.length());
+        int n;
+        while (len > 0) {
+            if (tail == null || tailUsed == tail.length) addChunk();
+            n = Math.min(len, tail.length - tailUsed);
+            str.getChars(off, off + n, tail, tailUsed);
+            tailUsed += n;
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public StringSink append(CharSequence csq) {
+        if (csq == null) csq = "null";
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public StringSink append(CharSequence csq, int start, int end) {
+        if (csq == null) csq = "null";
+        Objects.checkFromToIndex(start, end, csq.length());
+        if (csq instanceof String) {
+            write((String) csq, start, end - start);
+        } else {
+            for (int i = start; i < end; i++) write(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public StringSink append(char c) {
+        write(c);
+        return this;
+    }
+
+    @Override
+    public void flush() {}
+
+    /**
+     * Has no effect, like StringWriter the text can still be read and written after closing.
+     */
+    @Override
+    public void close() {}
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        Objects.checkIndex(index, length);
+        int c = chunkOf(index);
+        return chunks[c][index - starts[c]];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        char[] out = new char[end - start];
+        copy(start, end, out);
+        return new String(out);
+    }
+
+    @Override
+    public String toString() {
+        char[] out = new char[length];
+        copy(0, length, out);
+        return new String(out);
+    }
+
+    /**
+     * Writes all the text to another Writer, one chunk at a time.
+     *
+     * @param out Where to write to
+     *
+     * @throws IOException From out
+     */
+    public void writeTo(Writer out) throws IOException {
+        for (int i = 0; i < chunkCount; i++) out.write(chunks[i], 0, used(i));
+    }
+
+    /**
+     * Encodes all the text into a new ByteBuffer, ready to be read.
+     *
+     * @param charset How to encode the text
+     *
+     * @return The encoded text
+     */
+    public ByteBuffer toByteBuffer(Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder()
+                                        .onMalformedInput(CodingErrorAction.REPLACE)
+                                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        long estimate = (long) (length * (double) encoder.averageBytesPerChar()) + 16;
+        ByteBuffer out = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, estimate));
+        // Holds a high surrogate left at the end of one chunk with its pair from the next
+        CharBuffer carry = CharBuffer.allocate(2);
+        CharBuffer in;
+        for (int i = 0; i < chunkCount; i++) {
+            in = CharBuffer.wrap(chunks[i], 0, used(i));
+            if (carry.position() > 0) {
+                carry.put(in.get()).flip();
+                while (encoder.encode(carry, out, false).isOverflow()) out = grow(out);
+                carry.clear();
+            }
+            while (encoder.encode(in, out, false).isOverflow()) out = grow(out);
+            if (in.hasRemaining()) carry.put(in);
+        }
+        carry.flip();
+        while (encoder.encode(carry, out, true).isOverflow()) out = grow(out);
+        while (encoder.flush(out).isOverflow()) out = grow(out);
+        return out.flip();
+    }
+
+    private static ByteBuffer grow(ByteBuffer full) {
+        var bigger = ByteBuffer.allocate(Math.max(16, full.capacity() * 2));
+        return bigger.put(full.flip());
+    }
+
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            starts = Arrays.copyOf(starts, chunkCount * 2);
+        }
+        // Grow geometrically so the number of chunks stays small
+        tail = new char[Math.min(MAX_CHUNK_SIZE, Math.max(FIRST_CHUNK_SIZE, length))];
+        tailUsed = 0;
+        chunks[chunkCount] = tail;
+        starts[chunkCount] = length;
+        chunkCount++;
+    }
+
+    private int used(int chunk) {
+        return chunk == chunkCount - 1 ? tailUsed : chunks[chunk].length;
+    }
+
+    private int chunkOf(int index) {
+        int c = Arrays.binarySearch(starts, 0, chunkCount, index);
+        return c >= 0 ? c : -c - 2;
+    }
+
+    private void copy(int start, int end, char[] out) {
+        int at = 0;
+        int n;
+        for (int c = start < end ? chunkOf(start) : chunkCount; c < chunkCount && start < end; c++) {
+            n = Math.min(end, starts[c] + used(c)) - start;
+            System.arraycopy(chunks[c], start - starts[c], out, at, n);
+            at += n;
+            start += n;
+        }
+    }
+}
@@ -1,49 +1,161 @@
+import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.GridLayout;
 import java.awt.HeadlessException;
 import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.JButton;
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultEditorKit;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
 
 @SuppressWarnings("ALL")
 public class TextEditor extends JFrame {
     public static final int PREFERRED_HEIGHT = 600;
     public static final int PREFERRED_WIDTH  = 800;
+    public static final int LOAD_CHUNK_SIZE  = 1 << 16;
+    public static final int SAVE_CHUNK_SIZE  = 1 << 16;
+    // Files at least this big are mapped instead of read in
+    public static final int LARGE_FILE_SIZE  = 1 << 24;
+    // How often edits are written to the journal, in milliseconds
+    public static final int JOURNAL_INTERVAL = 3000;
+    // How often the responsiveness report refreshes while shown, in milliseconds
+    public static final int MONITOR_INTERVAL = 1000;
+
+    public static final String MONITOR_NAME = "TextEditor:type=EditorMonitor";
+    // Set to "report" to print a line when the text is first painted, or to "exit" to also exit then
+    public static final String FIRST_PAINT_PROPERTY = "TextEditor.firstPaint";
 
     protected final Map<ActionType, EditorAction> actions;
 
-    protected final JTextArea textArea;
-
-    protected File    openFile;
-    protected boolean modified = false;
+    protected final JTextArea      textArea;
+    protected final EditorListener editorListener;
+    protected final EditorMonitor  monitor;
+
+    protected final JPanel       statusBar;
+    protected final JProgressBar progressBar;
+    protected final JButton      cancelButton;
+    protected final JLabel       positionLabel;
+    protected final Timer        journalTimer;
+
+    protected JDialog monitorDialog;
+
+    protected File             openFile;
+    protected boolean          modified = false;
+    protected OpenWorker<?, ?> loading;
+    protected SaveWorker       saving;
+    protected SearchWorker<?>  searching;
+    // Counts every change to the text, so work done on it in the background can tell if it is out of date
+    protected int              changeCount = 0;
+    // Time spent waiting on modal dialogs, which is the user's and not the editor's
+    protected long             dialogNanos = 0;
+    protected String           lastFind    = "";
+    protected String           lastReplace = "";
+    protected EditJournal      journal;
+    // A file the user has already agreed to recover the unsaved changes to, once it is open
+    protected File             recovering;
+    // Where lines start, for anything but a PieceTableDocument, which keeps its own
+    protected LineIndex        lines;
+    private boolean            positionPending;
 
     public TextEditor() throws HeadlessException {
         super();
 
-        textArea = new JTextArea();
+        monitor = new EditorMonitor();
+        monitor.start(MONITOR_NAME);
+        // Only reached when the window is disposed rather than exiting, which stops AWT on its own
+        this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                TextEditor.this.monitor.stop();
+            }
+        });
+
+        textArea = new JTextArea() {
+            // Keeps the view that only lays out visible lines whatever the look and feel
+            @Override
+            public void updateUI() {
+                setUI(new VirtualTextAreaUI());
+            }
+
+            private boolean painted;
+
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                TextEditor.this.monitor.painted();
+                if (!painted) {
+                    painted = true;
+                    TextEditor.this.firstPainted();
+                }
+            }
+        };
+        // Keys that change what is shown, which are the ones typed and the ones that move around
+        textArea.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyTyped(KeyEvent e) {
+                TextEditor.this.monitor.keyPressed(e);
+            }
+
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.isActionKey()) TextEditor.this.monitor.keyPressed(e);
+            }
+        });
         textArea.setLineWrap(true);
         textArea.setWrapStyleWord(true);
         var areaScrollPane = new JScrollPane(textArea);
@@ -51,9 +163,36 @@ public class TextEditor extends JFrame {
         areaScrollPane.setPreferredSize(new Dimension(PREFERRED_WIDTH, PREFERRED_HEIGHT));
 
         textArea.setText("");
-        textArea.getDocument().addDocumentListener(new EditorListener());
-
-        this.add(areaScrollPane);
+        editorListener = new EditorListener();
+        textArea.getDocument().addDocumentListener(editorListener);
+        lines = LineIndex.of(textArea.getDocument());
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> {
+            if (TextEditor.this.loading != null) TextEditor.this.loading.cancel(true);
+            if (TextEditor.this.saving != null) TextEditor.this.saving.cancel(true);
+            if (TextEditor.this.searching != null) TextEditor.this.searching.cancel(true);
+        });
+        statusBar = new JPanel(new BorderLayout());
+        statusBar.add(progressBar, BorderLayout.CENTER);
+        statusBar.add(cancelButton, BorderLayout.EAST);
+        statusBar.setVisible(false);
+
+        positionLabel = new JLabel();
+        positionLabel.setBorder(new EmptyBorder(2, 8, 2, 8));
+        textArea.addCaretListener(e -> this.positionChanged());
+        var southPanel = new JPanel(new BorderLayout());
+        southPanel.add(statusBar, BorderLayout.CENTER);
+        southPanel.add(positionLabel, BorderLayout.EAST);
+
+        this.add(areaScrollPane, BorderLayout.CENTER);
+        this.add(southPanel, BorderLayout.SOUTH);
+        this.updatePosition();
+
+        journalTimer = new Timer(JOURNAL_INTERVAL, e -> this.flushJournal());
+        journalTimer.start();
 
         actions = makeActions();
 
@@ -76,6 +215,9 @@ public class TextEditor extends JFrame {
         //Display the window.
         frame.pack();
         frame.setVisible(true);
+
+        // After the window has had a chance to paint, as it may read files and ask questions
+        SwingUtilities.invokeLater(frame::recover);
     }
 
     public static void main(String[] args) {
@@ -87,14 +229,314 @@ public class TextEditor extends JFrame {
         this.getAction(ActionType.SAVE).setEnabled(newFile != null);
     }
 
+    /**
+     * Replaces the text being edited with doc, moving the listener that tracks changes over to it.
+     */
+    protected void setDocument(Document doc) {
+        this.textArea.getDocument().removeDocumentListener(this.editorListener);
+        this.lines = doc instanceof PieceTableDocument ? null : LineIndex.of(doc);
+        this.textArea.setDocument(doc);
+        doc.addDocumentListener(this.editorListener);
+        this.updatePosition();
+    }
+
+    /**
+     * @return The line offset is in, counting from 0
+     */
+    protected int lineOf(int offset) {
+        if (this.lines != null) return this.lines.lineOf(offset);
+        return this.textArea.getDocument().getDefaultRootElement().getElementIndex(offset);
+    }
+
+    /**
+     * @return The offset line starts at, counting lines from 0
+     */
+    protected int lineStart(int line) {
+        if (this.lines != null) return this.lines.lineStart(line);
+        return this.textArea.getDocument().getDefaultRootElement().getElement(line).getStartOffset();
+    }
+
+    protected int lineCount() {
+        if (this.lines != null) return this.lines.getLineCount();
+        return this.textArea.getDocument().getDefaultRootElement().getElementCount();
+    }
+
+    // Updates the position shown once the current run of edits is over, however many there are
+    protected void positionChanged() {
+        if (this.positionPending) return;
+        this.positionPending = true;
+        SwingUtilities.invokeLater(() -> {
+            this.positionPending = false;
+            this.updatePosition();
+        });
+    }
+
+    // Shows where the caret is in the status bar
+    protected void updatePosition() {
+        int length = this.textArea.getDocument().getLength();
+        // Not caught up with an edit yet, it updates this itself once it has
+        if (this.lines != null && this.lines.getLength() != length) return;
+        int offset = Math.min(this.textArea.getCaretPosition(), length);
+        int line = this.lineOf(offset);
+        this.positionLabel.setText(String.format("Line %,d, Column %,d (%,d lines)", line + 1,
+                                                 offset - this.lineStart(line) + 1, this.lineCount()));
+    }
+
+    /**
+     * Called when the text is first painted, which is when the editor can first be used. This
+     * is reported if FIRST_PAINT_PROPERTY is set, for timing startup (see startup_benchmark.sh)
+     * and for the training run that builds its class data sharing archive (see build_launch.sh).
+     */
+    protected void firstPainted() {
+        String mode = System.getProperty(FIRST_PAINT_PROPERTY);
+        if (mode == null) return;
+        System.out.println("First paint");
+        if ("exit".equals(mode)) SwingUtilities.invokeLater(() -> System.exit(0));
+    }
+
+    /**
+     * Offers to put back edits that weren't saved when the editor last stopped, to a new text
+     * or else to the file that was edited most recently. That file is only opened if the user
+     * agrees.
+     */
+    protected void recover() {
+        this.startJournal(null);
+        if (this.modified) return;
+        File last = EditJournal.lastEdited();
+        if (last == null) return;
+        if (this.confirm("Unsaved changes to " + last.getName() + " were found from an earlier session. "
+                         + "Do you want to open it and recover them?", "Please confirm recovery.")) {
+            this.recovering = last;
+            this.open(last);
+            return;
+        }
+        // Not offered again
+        try {
+            var recovery = EditJournal.recover(last);
+            if (recovery != null) recovery.discard();
+        } catch (IOException e) {
+            // Offered again next time
+        }
+    }
+
+    /**
+     * Starts journaling edits to the text, which has just been opened from file, or is new
+     * if file is null. If edits to the same text were left in its journal by an earlier
+     * session, offers to make them again first.
+     */
+    protected void startJournal(File file) {
+        this.discardJournal();
+        boolean agreed = file != null && file.equals(this.recovering);
+        this.recovering = null;
+        String name = file != null ? file.getName() : "a new text";
+        EditJournal.Recovery recovery = null;
+        try {
+            recovery = EditJournal.recover(file);
+            if (recovery != null && !recovery.matches()) {
+                this.error("Unsaved changes to " + name + " were found, but the file has changed since.");
+            } else if (recovery != null
+                       && (agreed || this.confirm(recovery.edits + " unsaved changes to " + name
+                                                  + " were found from an earlier session. Do you want to "
+                                                  + "recover them?", "Please confirm recovery."))) {
+                recovery.replay(this.textArea.getDocument());
+                this.modified = true;
+                this.journal = recovery.resume();
+                return;
+            }
+        } catch (IOException | BadLocationException e) {
+            this.error("Could not recover unsaved changes.", e);
+        }
+        if (recovery != null) recovery.discard();
+        this.newJournal(file);
+    }
+
+    // Replaces the journal with an empty one for file
+    protected void newJournal(File file) {
+        this.discardJournal();
+        try {
+            this.journal = EditJournal.create(file);
+        } catch (IOException e) {
+            this.error("Could not start the edit journal, changes will only be kept by saving.", e);
+        }
+    }
+
+    protected void discardJournal() {
+        if (this.journal == null) return;
+        try {
+            this.journal.delete();
+        } catch (IOException e) {
+            // Left behind, it is replaced the next time this text is journaled
+        }
+        this.journal = null;
+    }
+
+    protected void flushJournal() {
+        var flushing = this.journal;
+        if (flushing == null) return;
+        flushing.flush().whenComplete((r, e) -> {
+            if (e == null) return;
+            SwingUtilities.invokeLater(() -> {
+                if (this.journal != flushing) return;
+                this.discardJournal();
+                var cause = e.getCause() != null && e.getCause().getCause() instanceof Exception
+                            ? (Exception) e.getCause().getCause() : new Exception(e);
+                this.error("Could not write the edit journal, changes will only be kept by saving.", cause);
+            });
+        });
+    }
+
+    /**
+     * Starts opening file in the background. Editing, and anything that would replace
+     * the text, is turned off until it finishes, and it can be cancelled from the status bar.
+     *
+     * Smaller files are read in and the text appears as it is read. Files of at least
+     * LARGE_FILE_SIZE are mapped into memory instead and edited as a piece table, so they
+     * can be bigger than the heap. Those show up once they have been indexed.
+     */
+    protected void open(File file) {
+        OpenWorker<?, ?> worker = file.length() >= LARGE_FILE_SIZE ? new MapWorker(file) : new LoadWorker(file);
+        if (this.loading != null) {
+            // What to go back to is whatever was there before the first load started
+            worker.previous = this.loading.previous;
+            worker.previousFile = this.loading.previousFile;
+            worker.previousModified = this.loading.previousModified;
+            this.loading.cancel(true);
+        } else {
+            worker.previous = this.textArea.getDocument();
+            worker.previousFile = this.openFile;
+            worker.previousModified = this.modified;
+        }
+
+        this.loading = worker;
+        this.loading.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) this.progressBar.setValue((Integer) e.getNewValue());
+        });
+        this.progressBar.setValue(0);
+        this.progressBar.setString("Opening " + file.getName());
+        this.statusBar.setVisible(true);
+        this.loading.start();
+    }
+
+    /**
+     * Starts saving the text to file in the background. Editing and anything else that
+     * would change what is being saved is turned off until it finishes, and it can be
+     * cancelled from the status bar, which leaves file as it was.
+     */
+    protected void save(File file) {
+        this.saving = new SaveWorker(file, this.textArea.getDocument());
+        this.saving.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) this.progressBar.setValue((Integer) e.getNewValue());
+        });
+        this.progressBar.setValue(0);
+        this.progressBar.setString("Saving " + file.getName());
+        this.statusBar.setVisible(true);
+        this.saving.start();
+    }
+
+    /**
+     * Starts searching the text in the background for what is set up in worker, which then
+     * acts on what it found back on the event thread. Like saving, editing is turned off
+     * until it finishes, and it can be cancelled from the status bar.
+     */
+    protected void search(SearchWorker<?> worker, String status) {
+        this.searching = worker;
+        this.searching.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) this.progressBar.setValue((Integer) e.getNewValue());
+        });
+        this.progressBar.setValue(0);
+        this.progressBar.setString(status);
+        this.statusBar.setVisible(true);
+        this.searching.start();
+    }
+
+    /**
+     * @return Whether the text is being opened, saved or searched in the background
+     */
+    protected boolean isBusy() {
+        return this.loading != null || this.saving != null || this.searching != null;
+    }
+
+    // Turns editing off, along with anything that would change or replace the text, while it is worked on
+    protected void setBusy(boolean busy) {
+        this.textArea.setEditable(!busy);
+        for (var type : new ActionType[]{ActionType.NEW, ActionType.OPEN, ActionType.SAVE_AS, ActionType.FIND,
+                                         ActionType.REPLACE_ALL, ActionType.APPLY_PAIRS})
+            this.getAction(type).setEnabled(!busy);
+        this.getAction(ActionType.SAVE).setEnabled(!busy && this.openFile != null);
+    }
+
     protected void error(String message) {
         this.error(message, null);
     }
 
     protected void error(String message, Exception cause) {
-        JOptionPane.showMessageDialog(TextEditor.this, message,
-                                      cause != null ? cause.getClass().getName() : "Error",
-                                      JOptionPane.ERROR_MESSAGE);
+        this.modal(() -> {
+            JOptionPane.showMessageDialog(TextEditor.this, message,
+                                          cause != null ? cause.getClass().getName() : "Error",
+                                          JOptionPane.ERROR_MESSAGE);
+            return null;
+        });
+    }
+
+    /**
+     * Shows a modal dialog, keeping the time it is open out of the timing of whatever action
+     * showed it.
+     *
+     * @return What dialog returned
+     */
+    protected <T> T modal(Supplier<T> dialog) {
+        long start = System.nanoTime();
+        try {
+            return dialog.get();
+        } finally {
+            this.dialogNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Shows how quickly the editor has been responding, from its EditorMonitor. The same
+     * numbers are available through JMX as MONITOR_NAME.
+     */
+    protected void showMonitor() {
+        if (this.monitorDialog == null) {
+            var report = new JTextArea(30, 90);
+            report.setEditable(false);
+            report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, report.getFont().getSize()));
+            var refresh = new Timer(MONITOR_INTERVAL, e -> {
+                int at = report.getCaretPosition();
+                report.setText(this.monitor.report());
+                report.setCaretPosition(Math.min(at, report.getDocument().getLength()));
+            });
+            var reset = new JButton("Reset");
+            reset.addActionListener(e -> this.monitor.reset());
+
+            this.monitorDialog = new JDialog(this, "Responsiveness");
+            this.monitorDialog.add(new JScrollPane(report), BorderLayout.CENTER);
+            this.monitorDialog.add(reset, BorderLayout.SOUTH);
+            this.monitorDialog.addComponentListener(new ComponentAdapter() {
+                // Only refreshes while it can be seen
+                @Override
+                public void componentShown(ComponentEvent e) {
+                    refresh.start();
+                    report.setText(TextEditor.this.monitor.report());
+                }
+
+                @Override
+                public void componentHidden(ComponentEvent e) {
+                    refresh.stop();
+                }
+            });
+            this.monitorDialog.pack();
+            this.monitorDialog.setLocationRelativeTo(this);
+        }
+        this.monitorDialog.setVisible(true);
+    }
+
+    protected void inform(String message) {
+        this.modal(() -> {
+            JOptionPane.showMessageDialog(TextEditor.this, message);
+            return null;
+        });
     }
 
     protected boolean confirm(String message) {
@@ -103,10 +545,10 @@ public class TextEditor extends JFrame {
 
     protected boolean confirm(String message, String title) {
         return JOptionPane.OK_OPTION ==
-               JOptionPane.showConfirmDialog(TextEditor.this, message,
-                                             title != null ? title : "Please confirm",
-                                             JOptionPane.OK_CANCEL_OPTION,
-                                             JOptionPane.QUESTION_MESSAGE);
+               this.modal(() -> JOptionPane.showConfirmDialog(TextEditor.this, message,
+                                                              title != null ? title : "Please confirm",
+                                                              JOptionPane.OK_CANCEL_OPTION,
+                                                              JOptionPane.QUESTION_MESSAGE));
     }
 
     protected JMenuBar makeMenu() {
@@ -136,6 +578,29 @@ public class TextEditor extends JFrame {
         tempItem = new JMenuItem(this.actions.get(ActionType.EXIT));
         tempMenu.add(tempItem);
 
+        tempMenu = new JMenu("Edit");
+        tempMenu.setMnemonic(KeyEvent.VK_E);
+        menuBar.add(tempMenu);
+
+        tempItem = new JMenuItem(this.actions.get(ActionType.GOTO_LINE));
+        tempMenu.add(tempItem);
+
+        tempMenu.addSeparator();
+
+        tempItem = new JMenuItem(this.actions.get(ActionType.FIND));
+        tempMenu.add(tempItem);
+        tempItem = new JMenuItem(this.actions.get(ActionType.REPLACE_ALL));
+        tempMenu.add(tempItem);
+        tempItem = new JMenuItem(this.actions.get(ActionType.APPLY_PAIRS));
+        tempMenu.add(tempItem);
+
+        tempMenu = new JMenu("Debug");
+        tempMenu.setMnemonic(KeyEvent.VK_D);
+        menuBar.add(tempMenu);
+
+        tempItem = new JMenuItem(this.actions.get(ActionType.MONITOR));
+        tempMenu.add(tempItem);
+
         return menuBar;
     }
 
@@ -147,6 +612,11 @@ public class TextEditor extends JFrame {
         actions.put(ActionType.SAVE, new SaveAction());
         actions.put(ActionType.SAVE_AS, new SaveAsAction());
         actions.put(ActionType.EXIT, new ExitAction());
+        actions.put(ActionType.GOTO_LINE, new GotoLineAction());
+        actions.put(ActionType.FIND, new FindAction());
+        actions.put(ActionType.REPLACE_ALL, new ReplaceAllAction());
+        actions.put(ActionType.APPLY_PAIRS, new ApplyPairsAction());
+        actions.put(ActionType.MONITOR, new MonitorAction());
 
         return actions;
     }
@@ -161,11 +631,29 @@ public class TextEditor extends JFrame {
 
     @SuppressWarnings("InnerClassMayBeStatic")
     private abstract class EditorAction extends AbstractAction {
+        private final String timing;
+
         public EditorAction(ActionType type) {
             super(type.getName());
             this.putValue(Action.NAME, type.getName());
             this.putValue(Action.SHORT_DESCRIPTION, type.getDescription());
+            this.timing = EditorMonitor.ACTION_PREFIX + type.getName();
         }
+
+        // Times every action, leaving out any time spent in a dialog it shows through modal
+        @Override
+        public final void actionPerformed(ActionEvent e) {
+            long start = System.nanoTime();
+            long waited = TextEditor.this.dialogNanos;
+            try {
+                this.perform(e);
+            } finally {
+                TextEditor.this.monitor.record(timing, System.nanoTime() - start
+                                                       - (TextEditor.this.dialogNanos - waited));
+            }
+        }
+
+        protected abstract void perform(ActionEvent e);
     }
 
     private class NewAction extends EditorAction {
@@ -174,14 +662,16 @@ public class TextEditor extends JFrame {
         }
 
         @Override
-        public void actionPerformed(ActionEvent e) {
+        protected void perform(ActionEvent e) {
+            if (TextEditor.this.isBusy()) return;
             if (!TextEditor.this.modified || TextEditor.this.modified
                                              && TextEditor.this.confirm(
                     "Your work is not saved. Are you sure you want to create a new text?",
                     "Please confirm new.")) {
-                TextEditor.this.textArea.setText("");
+                TextEditor.this.setDocument(new PlainDocument());
                 TextEditor.this.setOpenFile(null);
                 TextEditor.this.modified = false;
+                TextEditor.this.startJournal(null);
             }
         }
     }
@@ -192,7 +682,8 @@ public class TextEditor extends JFrame {
         }
 
         @Override
-        public void actionPerformed(ActionEvent e) {
+        protected void perform(ActionEvent e) {
+            if (TextEditor.this.isBusy()) return;
             if (!TextEditor.this.modified || TextEditor.this.modified
                                              && TextEditor.this.confirm(
                     "Your work is not saved. Are you sure you want to open a new text?",
@@ -203,26 +694,537 @@ public class TextEditor extends JFrame {
                 var filter = new FileNameExtensionFilter("Text files", "txt");
                 jfc.addChoosableFileFilter(filter);
 
-                int returnValue = jfc.showOpenDialog(TextEditor.this);
+                int returnValue = TextEditor.this.modal(() -> jfc.showOpenDialog(TextEditor.this));
                 if (returnValue == JFileChooser.APPROVE_OPTION) {
-                    File tempFile = jfc.getSelectedFile();
+                    TextEditor.this.open(jfc.getSelectedFile());
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a file off the event thread.
+     *
+     * Subclasses do the reading in doInBackground and put the result in place in opened.
+     * If opening fails or is cancelled, whatever was being edited before is put back.
+     */
+    private abstract class OpenWorker<T, V> extends SwingWorker<T, V> {
+        protected final File file;
+
+        private Document previous;
+        private File     previousFile;
+        private boolean  previousModified;
+
+        // The text being loaded into, or shown while loading
+        private Document target;
+
+        public OpenWorker(File file) {
+            this.file = file;
+        }
+
+        // Must be called on the event thread
+        public void start() {
+            this.target = TextEditor.this.textArea.getDocument();
+            TextEditor.this.setBusy(true);
+            this.execute();
+        }
+
+        // Called on the event thread with the result of doInBackground
+        protected abstract void opened(T result);
+
+        @Override
+        protected void done() {
+            if (TextEditor.this.loading != this) return; // Replaced by a later load
+            TextEditor.this.loading = null;
+            TextEditor.this.statusBar.setVisible(false);
+
+            if (TextEditor.this.textArea.getDocument() != target) {
+                // Something else replaced the text meanwhile, so neither the result nor what
+                // was there before belongs in the editor any more
+                TextEditor.this.setBusy(false);
+                return;
+            }
 
-                    try (var in = new BufferedReader(new FileReader(tempFile))) {
-                        StringWriter newText = new StringWriter();
-                        in.lines().forEachOrdered(l -> {newText.write(l); newText.append('\n');});
+            try {
+                this.opened(get());
+                TextEditor.this.textArea.setCaretPosition(0);
+                TextEditor.this.setOpenFile(file);
+                TextEditor.this.modified = false;
+                TextEditor.this.setBusy(false);
+                TextEditor.this.startJournal(file);
+                return;
+            } catch (CancellationException ce) {
+                // Put back what was there, handled below
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                var cause = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+                if (cause instanceof NoSuchFileException) {
+                    TextEditor.this.error("Could not locate file.", cause);
+                } else {
+                    TextEditor.this.error("Could not open file.", cause);
+                }
+            }
 
-                        TextEditor.this.textArea.setText(newText.toString());
+            TextEditor.this.setDocument(previous);
+            TextEditor.this.setOpenFile(previousFile);
+            TextEditor.this.modified = previousModified;
+            // Only agreed to for this opening
+            TextEditor.this.recovering = null;
+            TextEditor.this.setBusy(false);
+        }
+    }
+
+    /**
+     * Reads a file into a new PlainDocument.
+     *
+     * The file is decoded in chunks in the background and each batch of chunks is appended
+     * on the event thread, so the window keeps responding and the text shows up as it comes
+     * in. Line endings are turned into '\n' the same way DefaultEditorKit.read does, and the
+     * one the file used is remembered in the Document so saving can put it back.
+     */
+    private class LoadWorker extends OpenWorker<String, String> {
+        private final PlainDocument doc = new PlainDocument();
+
+        public LoadWorker(File file) {
+            super(file);
+        }
 
-                        TextEditor.this.modified = false;
-                    } catch (FileNotFoundException fnfe) {
-                        TextEditor.this.error("Could not locate file.", fnfe);
-                    } catch (IOException ioe) {
-                        TextEditor.this.error("Could not open file.", ioe);
+        @Override
+        public void start() {
+            TextEditor.this.setDocument(doc);
+            super.start();
+        }
+
+        @Override
+        protected String doInBackground() throws IOException {
+            String lineEnd = null;
+            try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                 var in = new ChannelReader(channel, Charset.defaultCharset())) {
+                long size = Math.max(1, channel.size());
+                char[] buffer = new char[LOAD_CHUNK_SIZE];
+                var chunk = new StringBuilder(LOAD_CHUNK_SIZE);
+                boolean lastWasCR = false;
+                int n;
+                char c;
+                while (!isCancelled() && (n = in.read(buffer)) >= 0) {
+                    chunk.setLength(0);
+                    for (int i = 0; i < n; i++) {
+                        c = buffer[i];
+                        if (lastWasCR) {
+                            lastWasCR = false;
+                            if (c == '\n') {
+                                // Already turned the \r into a \n
+                                if (lineEnd == null) lineEnd = "\r\n";
+                                continue;
+                            }
+                            if (lineEnd == null) lineEnd = "\r";
+                        }
+                        if (c == '\r') {
+                            lastWasCR = true;
+                            c = '\n';
+                        } else if (c == '\n' && lineEnd == null) {
+                            lineEnd = "\n";
+                        }
+                        chunk.append(c);
                     }
+                    publish(chunk.toString());
+                    setProgress((int) Math.min(100, channel.position() * 100 / size));
+                }
+                if (lineEnd == null && lastWasCR) lineEnd = "\r";
+            }
+            return lineEnd;
+        }
+
+        @Override
+        protected void process(List<String> chunks) {
+            if (isCancelled()) return;
+
+            int total = 0;
+            for (var c : chunks) total += c.length();
+            var text = new StringBuilder(total);
+            for (var c : chunks) text.append(c);
+
+            try {
+                doc.insertString(doc.getLength(), text.toString(), null);
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        protected void opened(String lineEnd) {
+            if (lineEnd != null) doc.putProperty(DefaultEditorKit.EndOfLineStringProperty, lineEnd);
+        }
+    }
+
+    /**
+     * Maps a large file into memory and edits it as a PieceTableDocument.
+     *
+     * Only the index of the file is built here, which still means reading it all once, so
+     * this reports progress and can be cancelled. The text itself stays in the file.
+     */
+    private class MapWorker extends OpenWorker<MappedText, Void> {
+        public MapWorker(File file) {
+            super(file);
+        }
+
+        @Override
+        protected MappedText doInBackground() throws IOException {
+            try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = Math.max(1, channel.size());
+                return MappedText.open(channel, Charset.defaultCharset(),
+                                       n -> setProgress((int) Math.min(100, n * 100 / size)), this::isCancelled);
+            }
+        }
+
+        @Override
+        protected void opened(MappedText text) {
+            var doc = new PieceTableDocument(new PieceTableContent(text));
+            if (text.getLineEnd() != null) doc.putProperty(DefaultEditorKit.EndOfLineStringProperty, text.getLineEnd());
+            TextEditor.this.setDocument(doc);
+        }
+    }
 
-                    TextEditor.this.setOpenFile(tempFile);
+    /**
+     * Writes a Document to a file off the event thread.
+     *
+     * The text is streamed out a chunk at a time with Document.getText, so it is never copied
+     * whole, and line breaks are turned back into the ones the file used. It is written to a
+     * temporary file next to the real one, forced to disk, then renamed over it, so the file
+     * always holds either the old text or the new one and never part of either.
+     */
+    private class SaveWorker extends SwingWorker<Void, Void> {
+        private final File     file;
+        private final Document doc;
+        private final String   lineEnd;
+
+        public SaveWorker(File file, Document doc) {
+            this.file = file;
+            this.doc = doc;
+            var end = doc.getProperty(DefaultEditorKit.EndOfLineStringProperty);
+            this.lineEnd = end instanceof String ? (String) end : "\n";
+        }
+
+        // Must be called on the event thread
+        public void start() {
+            TextEditor.this.setBusy(true);
+            this.execute();
+        }
+
+        @Override
+        protected Void doInBackground() throws IOException {
+            Path target = file.toPath().toAbsolutePath();
+            try {
+                // Through any links, so it is the file that gets replaced rather than the link
+                target = target.toRealPath();
+            } catch (NoSuchFileException e) {
+                // A new file
+            }
+            // Made by File rather than Files so it gets the usual permissions, not owner only.
+            // The prefix must be at least 3 chars, whatever the file is called.
+            Path temp = File.createTempFile("." + target.getFileName() + ".save", ".tmp",
+                                            target.getParent().toFile()).toPath();
+            try {
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+                } catch (NoSuchFileException | UnsupportedOperationException e) {
+                    // A new file, or not a POSIX file system
+                }
+
+                try (var out = new ChannelWriter(FileChannel.open(temp, StandardOpenOption.WRITE),
+                                                 Charset.defaultCharset()) {
+                    // On disk before it is renamed into place
+                    @Override
+                    protected void finish() throws IOException {
+                        ((FileChannel) channel).force(true);
+                    }
+                }) {
+                    this.write(out);
+                }
+
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+
+            // Makes the rename itself last through a crash, where a directory can be synced
+            try (var dir = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+                // Not possible on every platform, the file is saved either way
+            }
+            return null;
+        }
+
+        private void write(ChannelWriter out) throws IOException {
+            int length = doc.getLength();
+            char[] chunk = new char[SAVE_CHUNK_SIZE];
+            int n, start;
+            for (int offset = 0; offset < length; offset += n) {
+                if (isCancelled()) throw new InterruptedIOException("Save cancelled.");
+
+                n = Math.min(SAVE_CHUNK_SIZE, length - offset);
+                this.read(offset, n, chunk);
+
+                start = 0;
+                if (!"\n".equals(lineEnd)) {
+                    for (int i = 0; i < n; i++) {
+                        if (chunk[i] == '\n') {
+                            out.write(chunk, start, i - start);
+                            out.write(lineEnd);
+                            start = i + 1;
+                        }
+                    }
+                }
+                out.write(chunk, start, n - start);
+                setProgress((int) ((offset + n) * 100L / length));
+            }
+        }
+
+        // Copies n chars from offset into dst, holding the document's read lock
+        private void read(int offset, int n, char[] dst) {
+            doc.render(() -> {
+                var text = new Segment();
+                text.setPartialReturn(true);
+                try {
+                    for (int done = 0; done < n; done += text.count) {
+                        doc.getText(offset + done, n - done, text);
+                        System.arraycopy(text.array, text.offset, dst, done, text.count);
+                    }
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException("Document changed while saving.", e);
+                }
+            });
+        }
+
+        @Override
+        protected void done() {
+            TextEditor.this.saving = null;
+            TextEditor.this.statusBar.setVisible(false);
+            TextEditor.this.setBusy(false);
+
+            try {
+                get();
+                TextEditor.this.modified = false;
+                // Everything journaled is in the file now
+                TextEditor.this.newJournal(file);
+            } catch (CancellationException ce) {
+                // The file was left as it was
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                var cause = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+                if (cause instanceof NoSuchFileException) {
+                    TextEditor.this.error("Could not locate file.", cause);
+                } else {
+                    TextEditor.this.error("Could not save to file.", cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the text off the event thread.
+     *
+     * The document is read through a DocumentText, so it is matched where it is rather than
+     * copied out, and a whole mapped file can be searched. Subclasses match in doInBackground
+     * and act on the result in found, back on the event thread, but only if the text is still
+     * exactly what was searched.
+     */
+    private abstract class SearchWorker<T> extends SwingWorker<T, Void> {
+        protected final Document     doc  = TextEditor.this.textArea.getDocument();
+        protected final DocumentText text = new DocumentText(doc) {
+            @Override
+            protected void loaded(int offset) {
+                if (SearchWorker.this.isCancelled()) throw new CancellationException();
+                setProgress((int) (offset * 100L / Math.max(1, this.length())));
+            }
+        };
+
+        private final int changes = TextEditor.this.changeCount;
+
+        // Must be called on the event thread
+        public void start() {
+            TextEditor.this.setBusy(true);
+            this.execute();
+        }
+
+        // Called on the event thread with the result of doInBackground
+        protected abstract void found(T result);
+
+        @Override
+        protected void done() {
+            TextEditor.this.searching = null;
+            TextEditor.this.statusBar.setVisible(false);
+            TextEditor.this.setBusy(false);
+
+            try {
+                T result = get();
+                if (TextEditor.this.textArea.getDocument() != doc || TextEditor.this.changeCount != changes) {
+                    TextEditor.this.error("The text changed while it was being searched, so it was left as it is.");
+                    return;
+                }
+                this.found(result);
+            } catch (CancellationException ce) {
+                // Nothing was changed
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ee) {
+                var cause = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+                if (cause instanceof FileNotFoundException || cause instanceof NoSuchFileException) {
+                    TextEditor.this.error("Could not locate file.", cause);
+                } else {
+                    TextEditor.this.error("Could not search the text.", cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the first match of a pattern from an offset on, going round to the start of the
+     * text if there isn't one after it, and selects it.
+     */
+    private class FindWorker extends SearchWorker<int[]> {
+        private final Pattern pattern;
+        private final int     from;
+
+        public FindWorker(Pattern pattern, int from) {
+            this.pattern = pattern;
+            this.from = from;
+        }
+
+        @Override
+        protected int[] doInBackground() {
+            Matcher m = pattern.matcher(text);
+            // Nothing from the offset on means any match from the start is before it
+            if (m.find(from) || m.find(0)) return new int[]{m.start(), m.end()};
+            return null;
+        }
+
+        @Override
+        protected void found(int[] match) {
+            if (match == null) {
+                TextEditor.this.inform("Could not find \"" + pattern.pattern() + "\".");
+                return;
+            }
+            TextEditor.this.textArea.select(match[0], match[1]);
+            TextEditor.this.textArea.getCaret().setSelectionVisible(true);
+            TextEditor.this.textArea.requestFocusInWindow();
+        }
+    }
+
+    /**
+     * Replaces every match of a pattern.
+     *
+     * The matches are all found in the background first, keeping only where each is and what
+     * goes in its place. Then they are replaced together on the event thread, from the last
+     * to the first. A PieceTableDocument does that as one edit under one write lock, so the
+     * text between the matches is never copied, however big the file.
+     */
+    private class ReplaceWorker extends SearchWorker<List<Replacement>> {
+        protected final Pattern pattern;
+        private final   String  replacement;
+
+        public ReplaceWorker(Pattern pattern, String replacement) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+
+        // What goes in place of a match, which is left alone if this returns it unchanged
+        protected String replace(String match) {
+            return replacement;
+        }
+
+        @Override
+        protected List<Replacement> doInBackground() throws Exception {
+            List<Replacement> found = new ArrayList<>();
+            Matcher m = pattern.matcher(text);
+            String match, with;
+            while (m.find()) {
+                match = m.group();
+                with = this.replace(match);
+                if (!with.equals(match)) found.add(new Replacement(m.start(), m.end(), with));
+            }
+            return found;
+        }
+
+        @Override
+        protected void found(List<Replacement> found) {
+            if (found.isEmpty()) {
+                TextEditor.this.inform("Nothing to replace.");
+                return;
+            }
+            int n = found.size();
+            try {
+                if (doc instanceof PieceTableDocument) {
+                    int[] offsets = new int[n];
+                    int[] lengths = new int[n];
+                    String[] texts = new String[n];
+                    Replacement r;
+                    for (int i = 0; i < n; i++) {
+                        r = found.get(i);
+                        offsets[i] = r.start;
+                        lengths[i] = r.end - r.start;
+                        texts[i] = r.text;
+                    }
+                    ((PieceTableDocument) doc).replace(offsets, lengths, texts);
+                } else {
+                    Replacement r;
+                    for (int i = n - 1; i >= 0; i--) {
+                        r = found.get(i);
+                        doc.remove(r.start, r.end - r.start);
+                        if (!r.text.isEmpty()) doc.insertString(r.start, r.text, null);
+                    }
                 }
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
             }
+            TextEditor.this.inform(String.format("Replaced %,d matches.", n));
+        }
+    }
+
+    /**
+     * Replaces the words of the text using a pair file, the same way TextSubstituter does.
+     * The pair file is read in the background too.
+     */
+    private class PairsWorker extends ReplaceWorker {
+        private final File pairFile;
+
+        private Map<String, String> pairs;
+
+        public PairsWorker(File pairFile) {
+            super(TextSubstituter.wordPattern(), null);
+            this.pairFile = pairFile;
+        }
+
+        @Override
+        protected String replace(String word) {
+            return TextSubstituter.substitute(pairs, word);
+        }
+
+        @Override
+        protected List<Replacement> doInBackground() throws Exception {
+            pairs = TextSubstituter.readPairs(pairFile);
+            return super.doInBackground();
+        }
+    }
+
+    // A match from start to end, and what goes in its place
+    private static class Replacement {
+        private final int    start;
+        private final int    end;
+        private final String text;
+
+        private Replacement(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
         }
     }
 
@@ -232,14 +1234,15 @@ public class TextEditor extends JFrame {
         }
 
         @Override
-        public void actionPerformed(ActionEvent e) {
+        protected void perform(ActionEvent e) {
+            if (TextEditor.this.isBusy()) return;
             var jfc = new JFileChooser(".");
             jfc.setDialogTitle("Choose save file");
             jfc.setAcceptAllFileFilterUsed(false);
             var filter = new FileNameExtensionFilter("Text files", "txt");
             jfc.addChoosableFileFilter(filter);
 
-            int returnValue = jfc.showSaveDialog(TextEditor.this);
+            int returnValue = TextEditor.this.modal(() -> jfc.showSaveDialog(TextEditor.this));
             if (returnValue == JFileChooser.APPROVE_OPTION) {
                 setOpenFile(jfc.getSelectedFile());
                 TextEditor.this.doAction(ActionType.SAVE, e);
@@ -254,22 +1257,11 @@ public class TextEditor extends JFrame {
         }
 
         @Override
-        public void actionPerformed(ActionEvent e) {
+        protected void perform(ActionEvent e) {
             File outFile = TextEditor.this.openFile;
-            if (outFile != null) {
-                try (var out = new BufferedWriter(new FileWriter(outFile, false))) {
-                    String text;
-                    synchronized (textArea) {
-                        text = textArea.getText();
-                    }
-                    out.write(text);
-                    out.flush();
-                    TextEditor.this.modified = false;
-                } catch (FileNotFoundException fnfe) {
-                    TextEditor.this.error("Could not locate file.", fnfe);
-                } catch (IOException ioe) {
-                    TextEditor.this.error("Could not save to file.", ioe);
-                }
+            // Not while the text is still arriving or already being saved
+            if (outFile != null && !TextEditor.this.isBusy()) {
+                TextEditor.this.save(outFile);
             }
         }
     }
@@ -280,16 +1272,127 @@ public class TextEditor extends JFrame {
         }
 
         @Override
-        public void actionPerformed(ActionEvent e) {
+        protected void perform(ActionEvent e) {
+            if (TextEditor.this.saving != null
+                && !TextEditor.this.confirm("Your work is still being saved. Are you sure you want to exit?",
+                                            "Please confirm exit.")) return;
             if (!TextEditor.this.modified || TextEditor.this.modified
                                              && TextEditor.this.confirm(
                     "Your work is not saved. Are you sure you want to exit?",
                     "Please confirm exit.")) {
+                TextEditor.this.discardJournal();
                 System.exit(0);
             }
         }
     }
 
+    private class GotoLineAction extends EditorAction {
+        public GotoLineAction() {
+            super(ActionType.GOTO_LINE);
+        }
+
+        @Override
+        protected void perform(ActionEvent e) {
+            int count = TextEditor.this.lineCount();
+            int current = TextEditor.this.lineOf(TextEditor.this.textArea.getCaretPosition()) + 1;
+            String input = TextEditor.this.modal(() -> JOptionPane.showInputDialog(
+                    TextEditor.this, "Line number (1 to " + count + "):", current));
+            if (input == null) return;
+            int line;
+            try {
+                line = Integer.parseInt(input.strip().replace(",", ""));
+            } catch (NumberFormatException nfe) {
+                line = 0;
+            }
+            if (line < 1 || line > count) {
+                TextEditor.this.error("There is no line " + input.strip() + ".");
+                return;
+            }
+            TextEditor.this.textArea.setCaretPosition(TextEditor.this.lineStart(line - 1));
+            TextEditor.this.textArea.requestFocusInWindow();
+        }
+    }
+
+    private class FindAction extends EditorAction {
+        public FindAction() {
+            super(ActionType.FIND);
+        }
+
+        @Override
+        protected void perform(ActionEvent e) {
+            if (TextEditor.this.isBusy()) return;
+            String find = TextEditor.this.modal(() -> JOptionPane.showInputDialog(TextEditor.this, "Find:",
+                                                                                  TextEditor.this.lastFind));
+            if (find == null || find.isEmpty()) return;
+            TextEditor.this.lastFind = find;
+            TextEditor.this.search(new FindWorker(Pattern.compile(find, Pattern.LITERAL),
+                                                  TextEditor.this.textArea.getSelectionEnd()),
+                                   "Finding \"" + find + "\"");
+        }
+    }
+
+    private class ReplaceAllAction extends EditorAction {
+        public ReplaceAllAction() {
+            super(ActionType.REPLACE_ALL);
+        }
+
+        @Override
+        protected void perform(ActionEvent e) {
+            if (TextEditor.this.isBusy()) return;
+            var findField = new JTextField(TextEditor.this.lastFind, 20);
+            var replaceField = new JTextField(TextEditor.this.lastReplace, 20);
+            var panel = new JPanel(new GridLayout(2, 2, 4, 4));
+            panel.add(new JLabel("Find:"));
+            panel.add(findField);
+            panel.add(new JLabel("Replace with:"));
+            panel.add(replaceField);
+            if (JOptionPane.OK_OPTION != TextEditor.this.modal(() -> JOptionPane.showConfirmDialog(
+                    TextEditor.this, panel, "Replace All", JOptionPane.OK_CANCEL_OPTION,
+                    JOptionPane.PLAIN_MESSAGE))) return;
+
+            String find = findField.getText();
+            if (find.isEmpty()) return;
+            TextEditor.this.lastFind = find;
+            TextEditor.this.lastReplace = replaceField.getText();
+            TextEditor.this.search(new ReplaceWorker(Pattern.compile(find, Pattern.LITERAL),
+                                                     TextEditor.this.lastReplace),
+                                   "Replacing \"" + find + "\"");
+        }
+    }
+
+    private class ApplyPairsAction extends EditorAction {
+        public ApplyPairsAction() {
+            super(ActionType.APPLY_PAIRS);
+        }
+
+        @Override
+        protected void perform(ActionEvent e) {
+            if (TextEditor.this.isBusy()) return;
+            var jfc = new JFileChooser(".");
+            jfc.setDialogTitle("Choose pair file");
+            jfc.setAcceptAllFileFilterUsed(false);
+            var filter = new FileNameExtensionFilter("Text files", "txt");
+            jfc.addChoosableFileFilter(filter);
+
+            int returnValue = TextEditor.this.modal(() -> jfc.showOpenDialog(TextEditor.this));
+            if (returnValue == JFileChooser.APPROVE_OPTION) {
+                var pairFile = jfc.getSelectedFile();
+                TextEditor.this.search(new PairsWorker(pairFile), "Applying " + pairFile.getName());
+            }
+        }
+    }
+
+    private class MonitorAction extends EditorAction {
+        public MonitorAction() {
+            super(ActionType.MONITOR);
+        }
+
+        @Override
+        protected void perform(ActionEvent e) {
+            TextEditor.this.showMonitor();
+        }
+    }
+
     protected enum ActionType {
         OPEN("Open", "Open a new text.", KeyStroke.getKeyStroke(KeyEvent.VK_O,
                                                                java.awt.event.InputEvent.CTRL_DOWN_MASK),
@@ -307,7 +1410,26 @@ public class TextEditor extends JFrame {
              SaveAsAction.class),
         EXIT("Exit", "Exits the program.", KeyStroke.getKeyStroke(KeyEvent.VK_X,
                                                                   java.awt.event.InputEvent.CTRL_DOWN_MASK),
-             ExitAction.class);
+             ExitAction.class),
+        GOTO_LINE("Go to Line", "Moves to a line of the text.",
+                  KeyStroke.getKeyStroke(KeyEvent.VK_G, java.awt.event.InputEvent.CTRL_DOWN_MASK),
+                  GotoLineAction.class),
+        FIND("Find", "Finds the next place some text appears.",
+             KeyStroke.getKeyStroke(KeyEvent.VK_F, java.awt.event.InputEvent.CTRL_DOWN_MASK),
+             FindAction.class),
+        REPLACE_ALL("Replace All", "Replaces everywhere some text appears.",
+                    KeyStroke.getKeyStroke(KeyEvent.VK_H, java.awt.event.InputEvent.CTRL_DOWN_MASK),
+                    ReplaceAllAction.class),
+        APPLY_PAIRS("Apply Substitution Pairs", "Replaces words using a pair file, as TextSubstituter does.",
+                    KeyStroke.getKeyStroke(KeyEvent.VK_H,
+                                           java.awt.event.InputEvent.CTRL_DOWN_MASK
+                                           | java.awt.event.InputEvent.SHIFT_DOWN_MASK),
+                    ApplyPairsAction.class),
+        MONITOR("Responsiveness", "Shows how quickly the editor has been responding.",
+                KeyStroke.getKeyStroke(KeyEvent.VK_D,
+                                       java.awt.event.InputEvent.CTRL_DOWN_MASK
+                                       | java.awt.event.InputEvent.SHIFT_DOWN_MASK),
+                MonitorAction.class);
 
         private final String    name;
         private final String    description;
@@ -339,21 +1461,44 @@ public class TextEditor extends JFrame {
     }
 
     private class EditorListener implements DocumentListener {
+        // Text arriving from a file being opened isn't an edit
+        private boolean isEdit() {
+            return TextEditor.this.loading == null;
+        }
+
         @Override
         public void insertUpdate(DocumentEvent e) {
-            TextEditor.this.modified = true;
-
+            TextEditor.this.changeCount++;
+            if (isEdit()) TextEditor.this.modified = true;
+            boolean journaled = isEdit() && TextEditor.this.journal != null;
+            if (journaled || TextEditor.this.lines != null) {
+                try {
+                    var text = new Segment();
+                    e.getDocument().getText(e.getOffset(), e.getLength(), text);
+                    if (TextEditor.this.lines != null) TextEditor.this.lines.inserted(e.getOffset(), text);
+                    if (journaled) TextEditor.this.journal.inserted(e.getOffset(), text.toString());
+                } catch (BadLocationException ble) {
+                    throw new IllegalStateException(ble);
+                }
+            }
+            TextEditor.this.positionChanged();
         }
 
         @Override
         public void removeUpdate(DocumentEvent e) {
-            TextEditor.this.modified = true;
-
+            TextEditor.this.changeCount++;
+            if (isEdit()) TextEditor.this.modified = true;
+            if (TextEditor.this.lines != null) TextEditor.this.lines.removed(e.getOffset(), e.getLength());
+            if (isEdit() && TextEditor.this.journal != null) {
+                TextEditor.this.journal.removed(e.getOffset(), e.getLength());
+            }
+            TextEditor.this.positionChanged();
         }
 
         @Override
         public void changedUpdate(DocumentEvent e) {
-            TextEditor.this.modified = true;
+            TextEditor.this.changeCount++;
+            if (isEdit()) TextEditor.this.modified = true;
 
         }
     }
@@ -1,4 +1,5 @@
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -6,52 +7,38 @@ import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.regex.Pattern;
 
 // An example use is included in text_replace_example.txt
+//
+// Most of a short run is JVM startup, so nothing is loaded before it is needed: the pair file
+// is read on a thread of its own while the input arrives, and there are no lambdas, streams or
+// regexes on the way to the first output. launch.sh runs this from a jar with a class data
+// sharing archive, which startup_benchmark.sh compares with the source launcher.
 public class TextSubstituter {
     private static final String[] ENDS = {".", "!", "?", ",", ":", ";"};
+
     public static void main(String[] args) {
-        Map<String, String> map = new HashMap<>();
+        Map<String, String> map = null;
+        PairLoader loader = null;
 
         if (args.length == 1) {
-            try (var in = new BufferedReader(new FileReader(args[0]))) {
-                in.lines().forEach(l -> {
-                    try {
-                        var ls = l.split(" ");
-                        map.put(ls[0], ls[1]);
-                    } catch (ArrayIndexOutOfBoundsException e) {
-                        System.err.println("Unable to parse line: " + l);
-                    }
-                });
-            } catch (FileNotFoundException e) {
-                System.err.println("Could not locate pair file: " + args[0]);
-            } catch (IOException e) {
-                System.err.println("Error occurred opening pair file " + args[0]);
-                e.printStackTrace();
-            }
+            loader = new PairLoader(args[0]);
+            loader.start();
         } else if (args.length == 0) {
             System.out.println("No change pairs given.");
         } else {
             System.out.println("Too many arguments given.");
         }
+        if (loader == null) map = new HashMap<>();
 
         try (var in = new BufferedReader(new InputStreamReader(System.in))) {
             StringTokenizer st;
-            String word, end;
             while (in.ready()) {
                 st = new StringTokenizer(in.readLine()); // Break into words
                 while (st.hasMoreTokens()) {
-                    word = st.nextToken();
-                    end = "";
-                    for (var e : ENDS)
-                        if (word.endsWith(e)) {
-                            word = word.substring(0, word.length()-e.length()); // Trim off end character
-                            end = e;
-                            break;
-                        }
-
-                    System.out.print(map.getOrDefault(word, word));
-                    System.out.print(end);
+                    if (map == null) map = loader.pairs();
+                    System.out.print(substitute(map, st.nextToken()));
                     if (st.hasMoreTokens()) System.out.print(' ');
                 }
                 System.out.println();
@@ -61,4 +48,82 @@ public class TextSubstituter {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Reads a pair file, where each line is a word and what to replace it with, separated
+     * by a space. Lines that aren't a pair are reported and skipped.
+     */
+    public static Map<String, String> readPairs(File file) throws IOException {
+        Map<String, String> map = new HashMap<>();
+        try (var in = new BufferedReader(new FileReader(file))) {
+            String l;
+            while ((l = in.readLine()) != null) {
+                try {
+                    var ls = l.split(" ");
+                    map.put(ls[0], ls[1]);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    System.err.println("Unable to parse line: " + l);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return A pattern matching a word as StringTokenizer splits them, for finding words to
+     *         substitute in a larger text
+     */
+    public static Pattern wordPattern() {
+        return Pattern.compile("[^ \\t\\n\\r\\f]+");
+    }
+
+    /**
+     * @param word A run of text without whitespace, which may end in punctuation
+     *
+     * @return The word with its replacement from map, if it has one, keeping the punctuation
+     */
+    public static String substitute(Map<String, String> map, String word) {
+        String end = "";
+        for (var e : ENDS)
+            if (word.endsWith(e)) {
+                word = word.substring(0, word.length()-e.length()); // Trim off end character
+                end = e;
+                break;
+            }
+        return map.getOrDefault(word, word) + end;
+    }
+
+    // Reads the pair file, reporting any problem with it the same way whether or not it is used
+    private static class PairLoader extends Thread {
+        private final String path;
+
+        private Map<String, String> pairs = new HashMap<>();
+
+        private PairLoader(String path) {
+            super("PairLoader");
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            try {
+                pairs = readPairs(new File(path));
+            } catch (FileNotFoundException e) {
+                System.err.println("Could not locate pair file: " + path);
+            } catch (IOException e) {
+                System.err.println("Error occurred opening pair file " + path);
+                e.printStackTrace();
+            }
+        }
+
+        // Waits for the pairs, which are empty if they couldn't be read
+        private Map<String, String> pairs() {
+            try {
+                this.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return pairs;
+        }
+    }
 }
@@ -0,0 +1,25 @@
+import javax.swing.JComponent;
+import javax.swing.plaf.ComponentUI;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+
+/**
+ * Look and feel for a JTextArea that shows its text with a VirtualTextView, so it only
+ * lays out what is on screen however big the document or however long its lines.
+ *
+ * Text that needs bidirectional layout keeps the standard views, as this one draws
+ * everything left to right.
+ */
+public class VirtualTextAreaUI extends BasicTextAreaUI {
+    public static ComponentUI createUI(JComponent c) {
+        return new VirtualTextAreaUI();
+    }
+
+    @Override
+    public View create(Element elem) {
+        // AbstractDocument.I18NProperty, which isn't visible here
+        if (Boolean.TRUE.equals(elem.getDocument().getProperty("i18n"))) return super.create(elem);
+        return new VirtualTextView(elem);
+    }
+}
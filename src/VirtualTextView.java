@@ -0,0 +1,659 @@
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Toolkit;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.swing.JTextArea;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.LayeredHighlighter;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+/**
+ * A view of a whole plain text document that only lays out the lines it has to show.
+ *
+ * PlainView measures every line to find the longest, and WrappedPlainView makes a child
+ * view for every line and wraps all of them, so both take time proportional to the whole
+ * document whenever it is shown or resized. This view instead works out how a line wraps
+ * the first time that line is painted, or asked about, and remembers only the ones that
+ * took more than one row. Lines not seen yet are taken to be one row. Scroll positions are
+ * found from those counts, kept per bucket of lines in a Fenwick tree, so finding the line
+ * at any height takes O(log n) however long the document is.
+ *
+ * Lines longer than LONG_LINE are treated as a row of equal cells, one per char (a tab
+ * takes one cell too). Where any part of such a line is can then be worked out without
+ * reading the rest of it, so a file that is one enormous line still scrolls smoothly.
+ * The cells are as wide as an 'm'. With a monospaced font that is every char, and a row is
+ * drawn in one go. Otherwise (as under some look and feels) each char of a long line is
+ * drawn at the start of its own cell, still in the text area's font.
+ *
+ * The layout state belongs to the event thread, like the rest of Swing.
+ */
+public class VirtualTextView extends View implements TabExpander {
+    public static final int LONG_LINE    = 1 << 14;
+    // Lines past the bottom of the window measured while painting, so the scroll bar settles early
+    public static final int MARGIN_LINES = 32;
+
+    private static final int BUCKET_SIZE    = 1 << 8;
+    private static final int CACHED_LAYOUTS = 1 << 10;
+
+    private boolean wrap     = false;
+    private boolean wordWrap = false;
+
+    private Font        font;
+    private FontMetrics metrics;
+    private boolean     monospaced = true;
+    private int         lineHeight = 1;
+    private int         charWidth  = 1;
+    private int         tabSize    = 0;
+    private int         tabBase    = 0;
+    private int         width      = 0;
+    private int         longest    = 0;
+
+    // Rows past the first for lines known to wrap, and their totals per bucket of lines. The
+    // tree has room for more buckets than there are, so it only needs rebuilding now and then.
+    private final TreeMap<Integer, Integer> extraRows  = new TreeMap<>();
+    private       int[]                     bucketTree = new int[1];
+    private       int                       buckets    = 0;
+
+    private final Map<Integer, LineLayout> layouts = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, LineLayout> eldest) {
+            return size() > CACHED_LAYOUTS;
+        }
+    };
+
+    private boolean heightChanged = false;
+    private boolean widthChanged  = false;
+
+    private final Segment text  = new Segment();
+    private       char[]  cells = new char[256];
+
+    public VirtualTextView(Element elem) {
+        super(elem);
+    }
+
+    @Override
+    public void setParent(View parent) {
+        super.setParent(parent);
+        Container host = getContainer();
+        if (host instanceof JTextArea) {
+            wrap = ((JTextArea) host).getLineWrap();
+            wordWrap = ((JTextArea) host).getWrapStyleWord();
+        }
+    }
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        updateMetrics();
+        if (axis == X_AXIS) return wrap ? Math.max(width, charWidth) : longest + charWidth;
+        return (float) totalRows() * lineHeight;
+    }
+
+    @Override
+    public float getMinimumSpan(int axis) {
+        return wrap && axis == X_AXIS ? 0 : getPreferredSpan(axis);
+    }
+
+    @Override
+    public float getMaximumSpan(int axis) {
+        return wrap && axis == X_AXIS ? Integer.MAX_VALUE : getPreferredSpan(axis);
+    }
+
+    @Override
+    public void setSize(float width, float height) {
+        super.setSize(width, height);
+        int w = (int) Math.min(width, Integer.MAX_VALUE / 2);
+        if (wrap && w != this.width) {
+            this.width = w;
+            forgetLayout();
+            flushPreferenceChanges();
+        }
+    }
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        Rectangle alloc = a.getBounds();
+        updateMetrics();
+        updateTabBase(alloc.x);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = alloc;
+
+        var host = (JTextComponent) getContainer();
+        Highlighter h = host.getHighlighter();
+        var highlighter = h instanceof LayeredHighlighter ? (LayeredHighlighter) h : null;
+
+        var hints = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        if (hints != null && g instanceof Graphics2D) ((Graphics2D) g).addRenderingHints(hints);
+        g.setFont(font);
+
+        int row = Math.max(0, (clip.y - alloc.y) / lineHeight);
+        int lastRow = (clip.y + clip.height - alloc.y - 1) / lineHeight;
+        int[] at = locate(row);
+        int line = at[0];
+        int lines = getElement().getElementCount();
+        LineLayout layout;
+        int y;
+        for (int r = at[1]; line < lines && row <= lastRow; line++, r = 0) {
+            layout = layout(line);
+            for (; r < layout.rows() && row <= lastRow; r++, row++) {
+                y = alloc.y + row * lineHeight;
+                if (highlighter != null) {
+                    // The last row takes in the line break, so a selection past the end of the line shows
+                    int end = layout.rowEnd(r) + (r == layout.rows() - 1 ? 1 : 0);
+                    highlighter.paintLayeredHighlights(g, layout.start + layout.rowStart(r), layout.start + end,
+                                                       a, host, this);
+                }
+                drawRow(g, host, layout, r, alloc.x, y + metrics.getAscent(), clip);
+            }
+        }
+        for (int i = 0; i < MARGIN_LINES && line < lines; i++, line++) layout(line);
+
+        flushPreferenceChanges();
+    }
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+        Rectangle alloc = a.getBounds();
+        updateMetrics();
+        updateTabBase(alloc.x);
+
+        Element root = getElement();
+        if (pos < 0 || pos > root.getEndOffset()) throw new BadLocationException("Invalid offset", pos);
+
+        int line = root.getElementIndex(pos);
+        LineLayout layout = layout(line);
+        int offset = Math.min(pos - layout.start, layout.length);
+        if (b == Position.Bias.Backward && offset == 0 && line > 0) {
+            // Belongs with the end of the line before
+            layout = layout(--line);
+            offset = layout.length;
+        }
+        int r = layout.rowOf(offset, b == Position.Bias.Backward);
+
+        var rect = new Rectangle(alloc.x + (int) widthOf(layout, r, offset),
+                                 alloc.y + (rowsBefore(line) + r) * lineHeight, 1, lineHeight);
+        flushPreferenceChanges();
+        return rect;
+    }
+
+    @Override
+    public int viewToModel(float fx, float fy, Shape a, Position.Bias[] bias) {
+        Rectangle alloc = a.getBounds();
+        updateMetrics();
+        updateTabBase(alloc.x);
+        bias[0] = Position.Bias.Forward;
+
+        int row = (int) Math.floor((fy - alloc.y) / lineHeight);
+        if (row < 0) return getStartOffset();
+        if (row >= totalRows()) return Math.max(0, getEndOffset() - 1);
+
+        int[] at = locate(row);
+        LineLayout layout = layout(at[0]);
+        int r = Math.min(at[1], layout.rows() - 1);
+        int p0 = layout.rowStart(r);
+        int p1 = layout.rowEnd(r);
+
+        int n;
+        if (layout.cols > 0) {
+            n = Math.round((fx - alloc.x) / charWidth);
+        } else {
+            rowText(layout, p0, p1);
+            // Rounding in Utilities doesn't allow for tabs, so find the char and then the nearer side of it
+            n = Utilities.getTabbedTextOffset(text, metrics, alloc.x, fx, this, layout.start + p0, false);
+            if (p0 + n < p1) {
+                float x = fx - alloc.x;
+                if (x - widthOf(layout, r, p0 + n) > widthOf(layout, r, p0 + n + 1) - x) n++;
+            }
+        }
+        // A wrapped row ends where the next one starts, so stop just short of that
+        n = Math.max(0, Math.min(n, p1 - p0 - (r < layout.rows() - 1 ? 1 : 0)));
+
+        flushPreferenceChanges();
+        return layout.start + p0 + n;
+    }
+
+    /**
+     * Moving up or down works out the row above or below directly. The default walks
+     * back through every char of the row to find where it starts.
+     */
+    @Override
+    public int getNextVisualPositionFrom(int pos, Position.Bias b, Shape a, int direction, Position.Bias[] biasRet)
+            throws BadLocationException {
+        if (pos == -1 || direction != NORTH && direction != SOUTH)
+            return super.getNextVisualPositionFrom(pos, b, a, direction, biasRet);
+
+        Rectangle alloc = a.getBounds();
+        Rectangle r = modelToView(pos, a, b).getBounds();
+        var host = (JTextComponent) getContainer();
+        Point magic = host.getCaret() == null ? null : host.getCaret().getMagicCaretPosition();
+        float x = magic != null ? magic.x : r.x;
+        int y = direction == NORTH ? r.y - lineHeight : r.y + lineHeight;
+        if (y < alloc.y || y >= alloc.y + (long) totalRows() * lineHeight) return -1;
+        return viewToModel(x, y, a, biasRet);
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        changed(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        changed(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        Container host = getContainer();
+        if (host != null) host.repaint();
+    }
+
+    @Override
+    public float nextTabStop(float x, int tabOffset) {
+        if (tabSize == 0) return x;
+        int tabs = ((int) x - tabBase) / tabSize;
+        return tabBase + (tabs + 1) * tabSize;
+    }
+
+    private void changed(DocumentEvent e) {
+        updateMetrics();
+
+        Element root = getElement();
+        DocumentEvent.ElementChange change = e.getChange(root);
+        int line;
+        int removed;
+        int count;
+        if (change != null) {
+            line = change.getIndex();
+            removed = change.getChildrenRemoved().length;
+            count = change.getChildrenAdded().length;
+            shiftLines(line, removed, count);
+        } else {
+            line = root.getElementIndex(e.getOffset());
+            removed = 1;
+            count = 1;
+        }
+        shiftLayouts(line, removed, count, e.getType() == DocumentEvent.EventType.REMOVE ? -e.getLength()
+                                                                                        : e.getLength());
+        // Most likely on screen, anything past these waits until it is
+        for (int i = 0; i < Math.min(count, MARGIN_LINES); i++) layout(line + i);
+
+        heightChanged = true;
+        flushPreferenceChanges();
+        Container host = getContainer();
+        if (host != null) host.repaint();
+    }
+
+    // Lines from index on were replaced, so everything known about the ones after moves with them.
+    // Only the lines from index on are looked at.
+    private void shiftLines(int index, int removed, int added) {
+        // The replaced lines are measured again when they are next laid out
+        var replaced = extraRows.subMap(index, index + removed);
+        for (var entry : replaced.entrySet()) add(entry.getKey() / BUCKET_SIZE, -entry.getValue());
+        replaced.clear();
+
+        var after = extraRows.tailMap(index + removed);
+        if (added != removed && !after.isEmpty()) {
+            int n = after.size();
+            int[] lines = new int[n];
+            int[] rows = new int[n];
+            int i = 0;
+            for (var entry : after.entrySet()) {
+                lines[i] = entry.getKey();
+                rows[i] = entry.getValue();
+                add(lines[i] / BUCKET_SIZE, -rows[i++]);
+            }
+            after.clear();
+
+            ensureBuckets();
+            int line;
+            for (i = 0; i < n; i++) {
+                line = lines[i] - removed + added;
+                extraRows.put(line, rows[i]);
+                add(line / BUCKET_SIZE, rows[i]);
+            }
+        }
+        ensureBuckets();
+    }
+
+    // Only the layouts of the changed lines are forgotten, the ones after move along with the text
+    private void shiftLayouts(int index, int removed, int added, int delta) {
+        int n = layouts.size();
+        int[] lines = new int[n];
+        var kept = new LineLayout[n];
+        int i = 0;
+        for (var entry : layouts.entrySet()) {
+            lines[i] = entry.getKey();
+            kept[i++] = entry.getValue();
+        }
+
+        // Put back in the same order, so the least recently used still go first
+        layouts.clear();
+        for (i = 0; i < n; i++) {
+            if (lines[i] < index) layouts.put(lines[i], kept[i]);
+            else if (lines[i] >= index + removed) layouts.put(lines[i] - removed + added, kept[i].moved(delta));
+        }
+    }
+
+    private void updateMetrics() {
+        Container host = getContainer();
+        if (host == null) return;
+        Font f = host.getFont();
+        if (f != font) {
+            font = f;
+            metrics = host.getFontMetrics(f);
+            monospaced = metrics.charWidth('i') == metrics.charWidth('m')
+                         && metrics.charWidth('W') == metrics.charWidth('m');
+            lineHeight = Math.max(1, metrics.getHeight());
+            charWidth = Math.max(1, metrics.charWidth('m'));
+            forgetLayout();
+        }
+        int ts = getTabSize() * charWidth;
+        if (ts != tabSize) {
+            tabSize = ts;
+            forgetLayout();
+        }
+    }
+
+    private void updateTabBase(int x) {
+        if (x != tabBase) {
+            tabBase = x;
+            layouts.clear();
+        }
+    }
+
+    private int getTabSize() {
+        Integer size = (Integer) getDocument().getProperty(PlainDocument.tabSizeAttribute);
+        return size != null ? size : 8;
+    }
+
+    private void forgetLayout() {
+        layouts.clear();
+        extraRows.clear();
+        longest = 0;
+        bucketTree = new int[1];
+        rebuildBuckets();
+        heightChanged = true;
+        widthChanged = true;
+    }
+
+    private void flushPreferenceChanges() {
+        if (!heightChanged && !widthChanged) return;
+        boolean w = widthChanged;
+        boolean h = heightChanged;
+        widthChanged = false;
+        heightChanged = false;
+        preferenceChanged(null, w, h);
+    }
+
+    // How line is laid out, working it out if it isn't known
+    private LineLayout layout(int line) {
+        LineLayout layout = layouts.get(line);
+        if (layout != null) return layout;
+
+        Element e = getElement().getElement(line);
+        int start = e.getStartOffset();
+        // Leaving out the line break
+        int length = Math.max(0, e.getEndOffset() - 1 - start);
+        boolean wrapping = wrap && width > 0 && width < Integer.MAX_VALUE / 2;
+
+        if (length > LONG_LINE) {
+            int cols = wrapping ? Math.max(1, width / charWidth) : Math.max(1, length);
+            layout = new LineLayout(start, length, cols, null);
+            if (!wrapping) setLongest(length * charWidth);
+        } else if (!wrapping) {
+            layout = new LineLayout(start, length, 0, new int[]{0});
+            rowText(layout, 0, length);
+            setLongest((int) Utilities.getTabbedTextWidth(text, metrics, (float) tabBase, this, start));
+        } else {
+            // The line break is measured too, so a line that only just fits puts it on a row of its own
+            int measured = e.getEndOffset() <= getDocument().getLength() ? length + 1 : length;
+            layout = new LineLayout(start, length, 0, wrapRows(start, measured));
+        }
+
+        if (wrapping) setRows(line, layout.rows());
+        layouts.put(line, layout);
+        return layout;
+    }
+
+    private int[] wrapRows(int start, int length) {
+        try {
+            getDocument().getText(start, length, text);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+        int[] starts = new int[4];
+        int rows = 0;
+        int p = 0;
+        int n;
+        char[] chars = text.array;
+        int offset = text.offset;
+        float x0 = tabBase;
+        do {
+            if (rows == starts.length) starts = Arrays.copyOf(starts, rows * 2);
+            starts[rows++] = p;
+            var rest = new Segment(chars, offset + p, length - p);
+            n = wordWrap ? Utilities.getBreakLocation(rest, metrics, x0, x0 + width, this, start + p)
+                         : Utilities.getTabbedTextOffset(rest, metrics, x0, x0 + width, this, start + p, false);
+            // Always make progress, and don't split a surrogate pair
+            if (n <= 0) n = p + 1 < length && Character.isHighSurrogate(chars[offset + p]) ? 2 : 1;
+            p += n;
+        } while (p < length);
+        return Arrays.copyOf(starts, rows);
+    }
+
+    private void setLongest(int w) {
+        if (w > longest) {
+            longest = w;
+            widthChanged = true;
+        }
+    }
+
+    // Fetches chars from to to of the line into text
+    private void rowText(LineLayout layout, int from, int to) {
+        try {
+            getDocument().getText(layout.start + from, to - from, text);
+        } catch (BadLocationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // How far into row r offset is
+    private float widthOf(LineLayout layout, int r, int offset) {
+        int p0 = layout.rowStart(r);
+        if (layout.cols > 0) return (float) (offset - p0) * charWidth;
+        rowText(layout, p0, offset);
+        return Utilities.getTabbedTextWidth(text, metrics, (float) tabBase, this, layout.start + p0);
+    }
+
+    private void drawRow(Graphics g, JTextComponent host, LineLayout layout, int r, int x, int y, Rectangle clip) {
+        int p0 = layout.start + layout.rowStart(r);
+        int p1 = layout.start + layout.rowEnd(r);
+        float at = x;
+        if (layout.cols > 0 && !wrap) {
+            // Only the part of a long line that is in view
+            int first = Math.max(0, (clip.x - x) / charWidth);
+            int last = (clip.x + clip.width - x) / charWidth + 1;
+            at += (float) first * charWidth;
+            p1 = (int) Math.min(p1, (long) p0 + last);
+            p0 = Math.min(p1, p0 + first);
+        }
+
+        Color normal = host.isEnabled() ? host.getForeground() : host.getDisabledTextColor();
+        Color selected = host.getSelectedTextColor();
+        int sel0 = host.getSelectionStart();
+        int sel1 = host.getSelectionEnd();
+        boolean selectionShown = host.getCaret() != null && host.getCaret().isSelectionVisible();
+        if (!selectionShown || selected == null || sel0 == sel1 || sel1 <= p0 || sel0 >= p1) {
+            drawRun(g, layout, p0, p1, at, y, normal);
+            return;
+        }
+        at = drawRun(g, layout, p0, Math.max(p0, sel0), at, y, normal);
+        at = drawRun(g, layout, Math.max(p0, sel0), Math.min(p1, sel1), at, y, selected);
+        drawRun(g, layout, Math.min(p1, sel1), p1, at, y, normal);
+    }
+
+    private float drawRun(Graphics g, LineLayout layout, int p0, int p1, float x, int y, Color color) {
+        if (p0 >= p1) return x;
+        g.setColor(color);
+        rowText(layout, p0 - layout.start, p1 - layout.start);
+
+        if (layout.cols > 0) {
+            int n = text.count;
+            if (cells.length < n) cells = new char[Math.max(n, cells.length * 2)];
+            System.arraycopy(text.array, text.offset, cells, 0, n);
+            for (int i = 0; i < n; i++) if (cells[i] == '\t') cells[i] = ' ';
+            if (monospaced) {
+                g.drawChars(cells, 0, n, (int) x, y);
+            } else {
+                // Each at the start of its cell, so it is where the layout says it is
+                for (int i = 0; i < n; i++) g.drawChars(cells, i, 1, (int) x + i * charWidth, y);
+            }
+            return x + (float) n * charWidth;
+        }
+        return Utilities.drawTabbedText(text, x, y, (Graphics2D) g, this, p0);
+    }
+
+    private int totalRows() {
+        return getElement().getElementCount() + prefix(buckets);
+    }
+
+    // Rows above the first row of line
+    private int rowsBefore(int line) {
+        if (extraRows.isEmpty()) return line;
+        int bucket = line / BUCKET_SIZE;
+        int rows = line + prefix(bucket);
+        for (int extra : extraRows.subMap(bucket * BUCKET_SIZE, line).values()) rows += extra;
+        return rows;
+    }
+
+    // The line that row is in, and which of its rows it is
+    private int[] locate(int row) {
+        int lines = getElement().getElementCount();
+        if (extraRows.isEmpty()) {
+            int line = Math.min(row, lines - 1);
+            return new int[]{line, row - line};
+        }
+
+        // Last bucket starting at or before row
+        int low = 0;
+        int high = buckets - 1;
+        int mid;
+        while (low < high) {
+            mid = (low + high + 1) >>> 1;
+            if (mid * BUCKET_SIZE + prefix(mid) <= row) low = mid;
+            else high = mid - 1;
+        }
+
+        int line = low * BUCKET_SIZE;
+        int before = line + prefix(low);
+        int rows;
+        while (line < lines - 1) {
+            rows = 1 + extraRows.getOrDefault(line, 0);
+            if (row < before + rows) break;
+            before += rows;
+            line++;
+        }
+        return new int[]{line, row - before};
+    }
+
+    private void setRows(int line, int rows) {
+        int old = extraRows.getOrDefault(line, 0);
+        if (old == rows - 1) return;
+
+        if (rows > 1) extraRows.put(line, rows - 1);
+        else extraRows.remove(line);
+        ensureBuckets();
+        add(line / BUCKET_SIZE, rows - 1 - old);
+        heightChanged = true;
+    }
+
+    // Counts the buckets there are lines for now, rebuilding the tree if it has no room for them
+    private void ensureBuckets() {
+        buckets = getElement().getElementCount() / BUCKET_SIZE + 1;
+        if (buckets >= bucketTree.length) rebuildBuckets();
+    }
+
+    private void rebuildBuckets() {
+        buckets = getElement().getElementCount() / BUCKET_SIZE + 1;
+        bucketTree = new int[Math.max(bucketTree.length, buckets * 2 + 1)];
+        for (var entry : extraRows.entrySet()) add(entry.getKey() / BUCKET_SIZE, entry.getValue());
+    }
+
+    private void add(int bucket, int delta) {
+        for (int i = bucket + 1; i < bucketTree.length; i += i & -i) bucketTree[i] += delta;
+    }
+
+    // Extra rows in the buckets before bucket
+    private int prefix(int bucket) {
+        int sum = 0;
+        for (int i = Math.min(bucket, bucketTree.length - 1); i > 0; i -= i & -i) sum += bucketTree[i];
+        return sum;
+    }
+
+    // Where the rows of one line start, as offsets into it
+    private static class LineLayout {
+        final int   start;
+        final int   length;
+        // For long lines, how many cells fit in a row, otherwise 0
+        final int   cols;
+        final int[] rowStarts;
+
+        LineLayout(int start, int length, int cols, int[] rowStarts) {
+            this.start = start;
+            this.length = length;
+            this.cols = cols;
+            this.rowStarts = rowStarts;
+        }
+
+        // The same layout for the line once it starts delta chars further on
+        LineLayout moved(int delta) {
+            return new LineLayout(start + delta, length, cols, rowStarts);
+        }
+
+        int rows() {
+            return cols > 0 ? Math.max(1, (length + cols - 1) / cols) : rowStarts.length;
+        }
+
+        int rowStart(int r) {
+            return cols > 0 ? r * cols : rowStarts[r];
+        }
+
+        int rowEnd(int r) {
+            return r + 1 < rows() ? rowStart(r + 1) : length;
+        }
+
+        // Where a row is split, backward puts the offset at the end of the first row
+        int rowOf(int offset, boolean backward) {
+            int r;
+            if (cols > 0) {
+                r = Math.min(rows() - 1, offset / cols);
+            } else {
+                r = Arrays.binarySearch(rowStarts, offset);
+                r = r >= 0 ? r : -r - 2;
+            }
+            if (backward && r > 0 && offset == rowStart(r)) r--;
+            return r;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+#!/bin/bash
+# Times how long the programs take to get going, each way they can be started.
+#
+# For TextSubstituter this is the time to its first line of output and to exiting, started
+# through the source launcher as text_replace_example.sh does, from the jar, and from the jar
+# with its class data sharing archive. For TextEditor it is the time to first painting its
+# text, which it reports when TextEditor.firstPaint is set, from the jar with and without its
+# archive. Each is run RUNS times (10 unless given) and the median and best are shown.
+#
+#   ./build_launch.sh && ./startup_benchmark.sh 20
+
+cd "$(dirname "$0")"
+
+RUNS=${1:-10}
+JAR=build/TextProcessingTutoring.jar
+
+if [ ! -f "$JAR" ]; then
+    echo "Run build_launch.sh first." >&2
+    exit 1
+fi
+
+now() {
+    date +%s%N
+}
+
+# Runs a command with input from $INPUT, printing the milliseconds to its first line of output
+# and to its exit
+time_run() {
+    local start first end
+    start=$(now)
+    { IFS= read -r _; first=$(now); cat > /dev/null; } < <("$@" < "$INPUT" 2> /dev/null)
+    end=$(now)
+    echo "$(( (first - start) / 1000000 )) $(( (end - start) / 1000000 ))"
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'
+}
+
+# Runs a command RUNS times after one run to warm the file cache, and prints a line of results
+bench() {
+    local label=$1 first=() total=() result
+    shift
+    time_run "$@" > /dev/null
+    for ((i = 0; i < RUNS; i++)); do
+        result=($(time_run "$@"))
+        first+=("${result[0]}")
+        total+=("${result[1]}")
+    done
+    printf "%-40s %8s %8s %8s %8s\n" "$label" \
+           "$(printf "%s\n" "${first[@]}" | median)" "$(printf "%s\n" "${first[@]}" | sort -n | head -1)" \
+           "$(printf "%s\n" "${total[@]}" | median)" "$(printf "%s\n" "${total[@]}" | sort -n | head -1)"
+}
+
+printf "%-40s %17s %17s\n" "" "first output (ms)" "exit (ms)"
+printf "%-40s %8s %8s %8s %8s\n" "" median best median best
+
+INPUT=Green_Eggs_and_Ham.txt
+bench "TextSubstituter source launcher" java src/TextSubstituter.java pairs.txt
+bench "TextSubstituter jar" java -cp "$JAR" TextSubstituter pairs.txt
+if [ -f build/TextSubstituter.jsa ]; then
+    bench "TextSubstituter jar + AppCDS" java -XX:SharedArchiveFile=build/TextSubstituter.jsa -Xshare:auto \
+          -cp "$JAR" TextSubstituter pairs.txt
+fi
+
+if [ -n "$DISPLAY" ] || [ -n "$WAYLAND_DISPLAY" ] || [ "$(uname)" = Darwin ]; then
+    INPUT=/dev/null
+    EDITOR=(-DTextEditor.firstPaint=exit -Duser.home=build/home -cp "$JAR" TextEditor)
+    bench "TextEditor jar (first paint)" java "${EDITOR[@]}"
+    if [ -f build/TextEditor.jsa ]; then
+        bench "TextEditor jar + AppCDS (first paint)" java -XX:SharedArchiveFile=build/TextEditor.jsa -Xshare:auto \
+              "${EDITOR[@]}"
+    else
+        echo "No TextEditor archive, run build_launch.sh with a display to compare with one."
+    fi
+else
+    echo "No display, so TextEditor was not timed."
+fi
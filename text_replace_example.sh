@@ -1,4 +1,8 @@
 #!/bin/bash
 
-cat Green_Eggs_and_Ham.txt | java ./src/TextSubstituter.java pairs.txt
-
+# Starts much faster from the jar made by build_launch.sh, if it has been built
+if [ -f build/TextProcessingTutoring.jar ]; then
+    cat Green_Eggs_and_Ham.txt | ./launch.sh TextSubstituter pairs.txt
+else
+    cat Green_Eggs_and_Ham.txt | java ./src/TextSubstituter.java pairs.txt
+fi